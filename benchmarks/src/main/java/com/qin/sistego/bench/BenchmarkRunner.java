@@ -0,0 +1,31 @@
+package com.qin.sistego.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 基准测试的入口，参数与 JMH 的命令行相同。没有指定时默认启用 GC 分析器（报告分配速率）并以 JSON 格式输出结果，
+ * 便于与之前保存的结果比较
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListWithParams()
+                || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (cmd.getProfilers().isEmpty()) builder.addProfiler(GCProfiler.class);
+        if (!cmd.getResultFormat().hasValue()) builder.resultFormat(ResultFormatType.JSON);
+
+        new Runner(builder.build()).run();
+    }
+}
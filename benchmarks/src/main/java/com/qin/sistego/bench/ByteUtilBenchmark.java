@@ -0,0 +1,46 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.util.ByteUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 字节数组的搜索和转换。搜索的目标是 PNG 的 IEND 块，放在随机数据的末尾，相当于搜索整个图片文件
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ByteUtilBenchmark {
+
+    private static final byte[] IEND = {0, 0, 0, 0, 'I', 'E', 'N', 'D', (byte) 0xae, 0x42, 0x60, (byte) 0x82};
+
+    @Param({"1048576", "16777216"})
+    public int size;
+
+    private byte[] src;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        src = Covers.randomBytes(size);
+        System.arraycopy(IEND, 0, src, src.length - IEND.length, IEND.length);
+    }
+
+    @Benchmark
+    public int searchSubList() {
+        return ByteUtil.searchSubList(src, IEND);
+    }
+
+    @Benchmark
+    public int lastSearchSubList() {
+        return ByteUtil.lastSearchSubList(src, IEND);
+    }
+
+    @Benchmark
+    public int[] bytes2Ints() {
+        return ByteUtil.bytes2Ints(src);
+    }
+}
@@ -0,0 +1,171 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.util.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 基准测试使用的合成图片和需要隐藏的内容<br/>
+ * 图片为 4:3 的渐变叠加噪声，压缩率接近照片；内容为随机字节，不能被压缩。
+ * 生成的文件放在 <code>sistego.bench.dir</code>（默认为临时目录下的 sistego-bench）中，按格式和大小命名，之后的运行直接复用
+ */
+final class Covers {
+
+    private static final File DIR = new File(System.getProperty("sistego.bench.dir",
+            new File(System.getProperty("java.io.tmpdir"), "sistego-bench").getPath()));
+
+    /**
+     * 丢弃写入内容的输出流，用于测量提取而不写文件
+     */
+    static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private Covers() {
+    }
+
+    /**
+     * @param format     png、jpg、bmp 或 gif
+     * @param megapixels 百万像素数
+     * @return 图片路径，不存在时生成
+     */
+    static synchronized String image(String format, int megapixels) {
+        File file = new File(DIR, "cover-" + megapixels + "mp." + format);
+        if (!file.exists()) {
+            DIR.mkdirs();
+            // 先写入临时文件，中断时不会留下不完整的图片
+            File tmp = new File(DIR, "cover-" + megapixels + "mp.tmp." + format);
+            ImageUtil.writeImage(create(format, megapixels), tmp.getPath());
+            if (!tmp.renameTo(file)) throw new FileOperationException("生成基准测试的图片时出错");
+        }
+
+        return file.getPath();
+    }
+
+    /**
+     * 生成图片，png 为带透明通道的 ARGB，jpg 和 bmp 为 24 位 BGR，gif 为 256 色的调色板图片
+     */
+    static BufferedImage create(String format, int megapixels) {
+        long pixels = megapixels * 1000000L;
+        int width = (int) Math.sqrt(pixels * 4 / 3);
+        int height = (int) (pixels / width);
+
+        if ("png".equals(format)) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int seed = 0x9e3779b9;
+            for (int y = 0, i = 0; y < height; y++) {
+                for (int x = 0; x < width; x++, i++) {
+                    seed = next(seed);
+                    int noise = seed & 0x070707;
+                    int r = x * 255 / width, g = y * 255 / height, b = (x + y) * 127 / (width + height);
+                    data[i] = 0xff000000 | (r << 16 | g << 8 | b) ^ noise;
+                }
+            }
+            return image;
+        }
+
+        int type = "gif".equals(format) ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_3BYTE_BGR;
+        BufferedImage image = new BufferedImage(width, height, type);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int channels = data.length / width / height;
+        int seed = 0x9e3779b9;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int c = 0; c < channels; c++, i++) {
+                    seed = next(seed);
+                    int base = c == 0 ? x * 255 / width : c == 1 ? y * 255 / height : (x + y) * 127 / (width + height);
+                    data[i] = (byte) (base ^ seed & 7);
+                }
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * @param bytes 内容的字节数
+     * @return 内容为随机字节的文件路径，不存在时生成
+     */
+    static synchronized String payload(int bytes) {
+        File file = new File(DIR, "payload-" + bytes + ".bin");
+        if (!file.exists()) {
+            DIR.mkdirs();
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(file);
+                out.write(randomBytes(bytes));
+            } catch (IOException e) {
+                throw new FileOperationException("生成基准测试的内容时出错");
+            } finally {
+                if (out != null) try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        return file.getPath();
+    }
+
+    /**
+     * @return 由可见的 ASCII 字符组成的字符串，每个字符一个字节
+     */
+    static String message(int bytes) {
+        char[] chars = new char[bytes];
+        int seed = 0x2545f491;
+        for (int i = 0; i < chars.length; i++) {
+            seed = next(seed);
+            chars[i] = (char) ('!' + (seed >>> 1) % 94);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @return 固定种子生成的随机字节，每次运行相同
+     */
+    static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        int seed = 0x6b43a9b5;
+        for (int i = 0; i < bytes.length; i++) {
+            seed = next(seed);
+            bytes[i] = (byte) (seed >>> 24);
+        }
+
+        return bytes;
+    }
+
+    /**
+     * 删除基准测试中生成的输出文件
+     *
+     * @return 文件路径
+     */
+    static String delete(String path) {
+        new File(path).delete();
+        return path;
+    }
+
+    /**
+     * xorshift 伪随机数，比 {@link java.util.Random} 快得多，生成上亿像素的图片时不会成为瓶颈
+     */
+    private static int next(int x) {
+        x ^= x << 13;
+        x ^= x >>> 17;
+        x ^= x << 5;
+        return x;
+    }
+}
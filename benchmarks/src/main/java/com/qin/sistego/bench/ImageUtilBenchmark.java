@@ -0,0 +1,58 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.util.ImageUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图片像素与 LSB 隐写使用的列优先数组之间的转换
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class ImageUtilBenchmark {
+
+    @Param({"1", "10"})
+    public int megapixels;
+
+    private BufferedImage image;
+    private int[] ints;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        image = Covers.create("png", megapixels);
+        ints = ImageUtil.pixels2Ints(image);
+        bytes = ImageUtil.pixels2Bytes(image);
+    }
+
+    @Benchmark
+    public int[] pixels2Ints() {
+        return ImageUtil.pixels2Ints(image);
+    }
+
+    /**
+     * 写回的像素与原来相同，图片的内容在多次调用之间不变
+     */
+    @Benchmark
+    public BufferedImage ints2Pixels() {
+        ImageUtil.ints2Pixels(image, ints);
+        return image;
+    }
+
+    @Benchmark
+    public byte[] pixels2Bytes() {
+        return ImageUtil.pixels2Bytes(image);
+    }
+
+    @Benchmark
+    public BufferedImage bytes2Pixels() {
+        ImageUtil.bytes2Pixels(image, bytes);
+        return image;
+    }
+}
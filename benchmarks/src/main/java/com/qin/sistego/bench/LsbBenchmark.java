@@ -0,0 +1,110 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.core.LSB;
+import com.qin.sistego.core.LSBOptions;
+import com.qin.sistego.core.PngLSB;
+import com.qin.sistego.exception.OutOfSizeException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以文件为单位的 LSB 隐写和提取，包括解码、写入信息和编码的全部过程<br/>
+ * 100 百万像素的图片需要更大的堆，例如 <code>-p megapixels=100 -jvmArgsAppend -Xmx12g</code>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class LsbBenchmark {
+
+    @Param({"1", "10"})
+    public int megapixels;
+
+    @Param({"1024", "262144"})
+    public int payloadBytes;
+
+    private String cover;
+    private String payload;
+    private String carrier;
+    private String scatteredCarrier;
+    private String streamingCarrier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws OutOfSizeException {
+        cover = Covers.image("png", megapixels);
+        payload = Covers.payload(payloadBytes);
+        String message = Covers.message(payloadBytes);
+        carrier = LSB.hideString(cover, message);
+        scatteredCarrier = LSB.hideString(cover, message, scattered());
+        streamingCarrier = PngLSB.hideString(cover, message);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Covers.delete(carrier);
+        Covers.delete(scatteredCarrier);
+        Covers.delete(streamingCarrier);
+    }
+
+    /**
+     * 没有头部的旧格式，<code>LSB.hideFile(cover, payload)</code> 已经默认带头部，所以显式传入 null
+     */
+    @Benchmark
+    public String hideFile() throws OutOfSizeException {
+        return Covers.delete(LSB.hideFile(cover, payload, (LSBOptions) null));
+    }
+
+    /**
+     * 带头部的隐写，先转换整个图片的像素再写入信息
+     */
+    @Benchmark
+    public String hideFileWithHeader() throws OutOfSizeException {
+        return Covers.delete(LSB.hideFile(cover, payload, new LSBOptions()));
+    }
+
+    /**
+     * 带头部的隐写，直接写入图片的像素，与 {@link #hideFileWithHeader} 对比耗时和分配的内存
+     */
+    @Benchmark
+    public String hideFileLowFootprint() throws OutOfSizeException {
+        return Covers.delete(LSB.hideFile(cover, payload, new LSBOptions().setLowFootprint(true)));
+    }
+
+    /**
+     * 按密钥分散写入，与 {@link #hideFileWithHeader} 对比
+     */
+    @Benchmark
+    public String hideFileScattered() throws OutOfSizeException {
+        return Covers.delete(LSB.hideFile(cover, payload, scattered()));
+    }
+
+    @Benchmark
+    public String extractString() {
+        return LSB.extractString(carrier);
+    }
+
+    @Benchmark
+    public String extractStringScattered() {
+        return LSB.extractString(scatteredCarrier, scattered());
+    }
+
+    /**
+     * 逐行流式处理的 PNG 隐写，与 {@link #hideFileWithHeader} 对比
+     */
+    @Benchmark
+    public String hideFileStreaming() throws OutOfSizeException {
+        return Covers.delete(PngLSB.hideFile(cover, payload));
+    }
+
+    @Benchmark
+    public String extractStringStreaming() {
+        return PngLSB.extractString(streamingCarrier);
+    }
+
+    private static LSBOptions scattered() {
+        return new LSBOptions().setKey("benchmark");
+    }
+}
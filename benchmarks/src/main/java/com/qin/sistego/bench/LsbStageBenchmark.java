@@ -0,0 +1,70 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.core.LSB;
+import com.qin.sistego.core.LSBOptions;
+import com.qin.sistego.exception.OutOfSizeException;
+import com.qin.sistego.util.ImageUtil;
+import com.qin.sistego.util.PngEncoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把 {@link LSB#hideFile(String, String)} 拆分为解码、在内存中写入信息、编码三个阶段分别测量，
+ * 各阶段的时间之和接近整个隐写的时间，用于判断优化应该针对哪个阶段
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class LsbStageBenchmark {
+
+    @Param({"1", "10"})
+    public int megapixels;
+
+    @Param({"262144"})
+    public int payloadBytes;
+
+    private String cover;
+    private BufferedImage image;
+    private byte[] payload;
+    private LSBOptions options;
+    private PngEncoder encoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cover = Covers.image("png", megapixels);
+        image = ImageUtil.readImage(cover);
+        payload = Covers.randomBytes(payloadBytes);
+        options = new LSBOptions();
+        encoder = new PngEncoder();
+    }
+
+    @Benchmark
+    public BufferedImage decode() {
+        return ImageUtil.readImage(cover);
+    }
+
+    /**
+     * 包括读取像素、写入信息和写回像素，每次都写入同一个图片，写入的内容相同
+     */
+    @Benchmark
+    public BufferedImage embed() throws OutOfSizeException {
+        LSB.hideFile(image, "payload.bin", payload, options);
+        return image;
+    }
+
+    @Benchmark
+    public byte[] encodeImageIO() {
+        return ImageUtil.encodeImage(image, "png");
+    }
+
+    @Benchmark
+    public void encodePngEncoder() throws IOException {
+        encoder.encode(image, Covers.NULL_OUTPUT, null);
+    }
+}
@@ -0,0 +1,56 @@
+package com.qin.sistego.bench;
+
+import com.qin.sistego.core.Tail;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各种格式的文件末尾隐写和提取，耗时主要在于复制图片和读写内容
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class TailBenchmark {
+
+    @Param({"png", "jpg", "bmp", "gif"})
+    public String format;
+
+    @Param({"1", "10"})
+    public int megapixels;
+
+    @Param({"1024", "1048576"})
+    public int payloadBytes;
+
+    private String cover;
+    private String payload;
+    private String carrier;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cover = Covers.image(format, megapixels);
+        payload = Covers.payload(payloadBytes);
+        carrier = Tail.hideFile(cover, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Covers.delete(carrier);
+    }
+
+    @Benchmark
+    public String hideFile() {
+        return Covers.delete(Tail.hideFile(cover, payload));
+    }
+
+    /**
+     * 与 <code>Tail.extractFile</code> 的过程相同，只是内容写入丢弃数据的输出流，不覆盖测试数据目录中同名的内容文件
+     */
+    @Benchmark
+    public String extractFile() {
+        return Tail.extract(carrier, Covers.NULL_OUTPUT);
+    }
+}
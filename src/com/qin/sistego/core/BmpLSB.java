@@ -0,0 +1,329 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.exception.OutOfSizeException;
+import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.FileUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 未压缩的 24 位和 32 位 BMP 图片的 LSB 隐写：把图片复制为输出文件后，将其像素数据映射到内存，直接修改映射的缓冲区中的最低位，
+ * 不解码、不重新编码图片，只有写入了信息的行会被读写；提取时直接从映射中读取<br/>
+ * 信息按原生样本布局写入（见 {@link SampleWriter}），样本按图片的坐标从上到下逐行排列，每个像素内依次为 R、G、B，
+ * 32 位图片的第 4 个字节不使用，所以转换为 PNG 等无损格式后仍能按同样的布局提取。
+ * 头部在信息之前写入，需要预先知道信息的长度，所以不能压缩信息；只有写入了信息的行会被读写，所以不能按密钥分散写入
+ */
+public class BmpLSB {
+
+    private static final int CHANNELS = 3;
+
+    /**
+     * 以默认参数（每个样本 1 位）隐藏文件
+     */
+    public static String hideFile(String image, String file) throws OutOfSizeException {
+        return hideFile(image, file, null);
+    }
+
+    /**
+     * 按指定的参数隐藏文件，文件内容边读取边写入，不会整个读入内存
+     *
+     * @param image   BMP 图片路径
+     * @param file    需要隐藏的文件路径
+     * @param options 隐写参数（只使用其中的深度，不能设置压缩级别和密钥），为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 文件超出了图片的容量
+     */
+    public static String hideFile(String image, String file, LSBOptions options) throws OutOfSizeException {
+        FileInputStream in = null;
+
+        try {
+            in = new FileInputStream(file);
+
+            return hide(image, new File(file).getName(), in, in.getChannel().size(), options);
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("读取需要隐藏的文件时出错");
+        } finally {
+            FileUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * 以文件的格式隐藏输入流中的内容，提取时与 <code>hideFile</code> 隐藏的文件相同
+     *
+     * @param image    BMP 图片路径
+     * @param fileName 提取时使用的文件名
+     * @param payload  需要隐藏的内容，读取 length 个字节，不会关闭它
+     * @param length   内容的字节数
+     * @param options  隐写参数，不能设置压缩级别和密钥，为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    public static String hide(String image, String fileName, InputStream payload, long length, LSBOptions options) throws OutOfSizeException {
+        return hide(image, FileUtil.infoHeaderBytes(fileName, length), payload, length, options, LSBHeader.MODE_FILE);
+    }
+
+    /**
+     * 以默认参数（每个样本 1 位）隐藏字符串
+     */
+    public static String hideString(String image, String message) throws OutOfSizeException {
+        return hideString(image, message, null);
+    }
+
+    /**
+     * 按指定的参数隐藏字符串
+     *
+     * @param image   BMP 图片路径
+     * @param message 需要隐藏的字符串
+     * @param options 隐写参数，不能设置压缩级别和密钥，为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 字符串超出了图片的容量
+     */
+    public static String hideString(String image, String message, LSBOptions options) throws OutOfSizeException {
+        byte[] stringBytes = message.getBytes();
+        byte[] stringLengthBytes = ByteUtil.int2Bytes(stringBytes.length);
+
+        return hide(image, stringLengthBytes, new ByteArrayInputStream(stringBytes), stringBytes.length, options, LSBHeader.MODE_STRING);
+    }
+
+    /**
+     * 先只读取文件头检查格式和容量，再复制图片并在映射的像素数据中写入信息
+     *
+     * @param mode 隐藏的是文件还是字符串
+     */
+    private static String hide(String image, byte[] headerBytes, InputStream payload, long length, LSBOptions options, byte mode)
+            throws OutOfSizeException {
+        RandomAccessFile in = null;
+        RandomAccessFile out = null;
+        String output = null;
+        boolean completed = false;
+
+        try {
+            in = new RandomAccessFile(image, "r");
+            Layout layout = Layout.read(in.getChannel());
+            SampleWriter writer = SampleWriter.create(layout.samples(), headerBytes, payload, length, options, mode);
+
+            output = FileUtil.getOutputPath(image);
+            out = new RandomAccessFile(output, "rw");
+            FileUtil.transferFully(in.getChannel(), out.getChannel());
+
+            MappedByteBuffer pixels = layout.map(out.getChannel(), FileChannel.MapMode.READ_WRITE);
+            byte[] row = new byte[layout.rowBytes()];
+            byte[] samples = new byte[layout.width * CHANNELS];
+            for (int y = 0; y < layout.height && !writer.isComplete(); y++) {
+                int position = layout.rowOffset(y);
+                pixels.position(position);
+                pixels.get(row);
+                layout.gather(row, samples);
+                writer.embed(samples, 0, 1, samples.length);
+                layout.scatter(samples, row);
+                pixels.position(position);
+                pixels.put(row);
+            }
+            pixels.force();
+            completed = true;
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (EOFException e) {
+            throw new FileOperationException("需要隐藏的内容长度不足");
+        } catch (IOException e) {
+            throw new FileOperationException("BMP 图片隐写时出错");
+        } finally {
+            FileUtil.closeQuietly(in, out);
+            if (!completed && output != null) new File(output).delete(); // 不保留不完整的图片
+        }
+
+        return output;
+    }
+
+    public static String extractFile(String image) {
+        String fileName = extract(image, null);
+
+        return new File(new File(image).getParent(), fileName).getAbsolutePath();
+    }
+
+    /**
+     * 提取隐藏的文件，只读取信息覆盖的行
+     *
+     * @param image BMP 图片路径
+     * @param sink  接收文件内容的输出流，不会关闭它；为 null 时写入图片所在目录下与隐藏的文件同名的文件。
+     *              信息在全部写出之后才能校验，校验失败时输出流中已经写入了内容
+     * @return 隐藏的文件名
+     */
+    public static String extract(String image, OutputStream sink) {
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(image, "r");
+            return open(raf.getChannel()).readFile(sink, new File(image).getParentFile());
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("提取LSB隐写的文件时出错");
+        } finally {
+            FileUtil.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 提取隐藏的字符串
+     *
+     * @param image BMP 图片路径
+     * @return 隐藏的字符串
+     */
+    public static String extractString(String image) {
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(image, "r");
+            return open(raf.getChannel()).readString();
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("提取LSB隐写的字符串时出错");
+        } finally {
+            FileUtil.closeQuietly(raf);
+        }
+    }
+
+    /**
+     * 探测图片中是否有按原生样本布局隐藏的信息，只读取头部所在的第一行
+     *
+     * @param image BMP 图片路径
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(String image) {
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(image, "r");
+            return open(raf.getChannel()).probe();
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片时出错");
+        } finally {
+            FileUtil.closeQuietly(raf);
+        }
+    }
+
+    private static SampleReader open(FileChannel channel) throws IOException {
+        final Layout layout = Layout.read(channel);
+        final MappedByteBuffer pixels = layout.map(channel, FileChannel.MapMode.READ_ONLY);
+
+        return new SampleReader() {
+            private final byte[] row = new byte[layout.rowBytes()];
+            private final byte[] samples = new byte[layout.width * CHANNELS];
+            private int y;
+
+            @Override
+            protected boolean nextSamples() {
+                if (y == layout.height) return false;
+
+                pixels.position(layout.rowOffset(y++));
+                pixels.get(row);
+                layout.gather(row, samples);
+                setSamples(samples, 0, 1, samples.length);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * BMP 文件头中描述像素数据位置和排列方式的字段
+     */
+    private static class Layout {
+
+        private static final int HEADER_LENGTH = 54; // 文件头（14 字节）+ BITMAPINFOHEADER（40 字节）
+
+        final long dataOffset;
+        final int width;
+        final int height;
+        final boolean bottomUp;
+        final int bytesPerPixel;
+        final int stride; // 每行的字节数，按 4 字节对齐
+
+        private Layout(long dataOffset, int width, int height, boolean bottomUp, int bytesPerPixel, int stride) {
+            this.dataOffset = dataOffset;
+            this.width = width;
+            this.height = height;
+            this.bottomUp = bottomUp;
+            this.bytesPerPixel = bytesPerPixel;
+            this.stride = stride;
+        }
+
+        /**
+         * 读取并检查文件头，各字段按“小端方式”存储
+         */
+        static Layout read(FileChannel channel) throws IOException {
+            if (channel.size() < HEADER_LENGTH) throw new FileOperationException("不是 BMP 图片");
+            ByteBuffer header = ByteBuffer.wrap(FileUtil.readFully(channel, 0, HEADER_LENGTH)).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.get(0) != 'B' || header.get(1) != 'M') throw new FileOperationException("不是 BMP 图片");
+
+            long dataOffset = header.getInt(10) & 0xffffffffL;
+            int infoSize = header.getInt(14);
+            int width = header.getInt(18);
+            int height = header.getInt(22); // 为负数时各行从上到下存储
+            int bitCount = header.getShort(28) & 0xffff;
+            int compression = header.getInt(30);
+            if (infoSize < 40 || (bitCount != 24 && bitCount != 32) || compression != 0)
+                throw new FileOperationException("只支持未压缩的 24 位和 32 位 BMP 图片");
+            if (width <= 0 || height == 0 || height == Integer.MIN_VALUE) throw new FileOperationException("BMP 图片已损坏");
+
+            long stride = ((long) width * bitCount + 31) / 32 * 4;
+            long end = dataOffset + stride * Math.abs(height);
+            if (end > channel.size()) throw new FileOperationException("BMP 图片不完整");
+            if (stride * Math.abs(height) > Integer.MAX_VALUE) throw new FileOperationException("图片文件过大");
+
+            return new Layout(dataOffset, width, Math.abs(height), height > 0, bitCount / 8, (int) stride);
+        }
+
+        long samples() {
+            return (long) width * height * CHANNELS;
+        }
+
+        int rowBytes() {
+            return width * bytesPerPixel;
+        }
+
+        /**
+         * @param y 从上到下的行号
+         * @return 该行在像素数据中的位置
+         */
+        int rowOffset(int y) {
+            return (bottomUp ? height - 1 - y : y) * stride;
+        }
+
+        MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode) throws IOException {
+            return channel.map(mode, dataOffset, (long) stride * height);
+        }
+
+        /**
+         * 将一行中按 B、G、R（、保留）存储的像素转换为按 R、G、B 排列的样本
+         */
+        void gather(byte[] row, byte[] samples) {
+            for (int p = 0, s = 0; s < samples.length; p += bytesPerPixel, s += CHANNELS) {
+                samples[s] = row[p + 2];
+                samples[s + 1] = row[p + 1];
+                samples[s + 2] = row[p];
+            }
+        }
+
+        /**
+         * <code>gather</code> 的逆过程
+         */
+        void scatter(byte[] samples, byte[] row) {
+            for (int p = 0, s = 0; s < samples.length; p += bytesPerPixel, s += CHANNELS) {
+                row[p + 2] = samples[s];
+                row[p + 1] = samples[s + 1];
+                row[p] = samples[s + 2];
+            }
+        }
+    }
+}
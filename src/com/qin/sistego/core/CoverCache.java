@@ -0,0 +1,291 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.util.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 解码后的载体图片的缓存，反复向少数几张图片中隐藏不同的信息时，只有第一次需要解码<br/>
+ * 以图片的路径、修改时间和文件大小识别图片，文件被修改后重新解码。同时限制缓存的图片数和像素数据的总字节数，
+ * 超出时淘汰最久没有使用的图片。隐写得到的是缓存的像素数据的副本，不会修改缓存<br/>
+ * 可以把像素数据放在堆外的直接缓冲区中，大图片不会增加垃圾回收的负担；淘汰的直接缓冲区在被回收时释放。
+ * 由 {@link LSBOptions#setCoverCache} 指定给 LSB 隐写使用，同一个缓存可以在多个线程之间共享
+ *
+ * <pre>
+ * CoverCache cache = new CoverCache(8, 512L * 1024 * 1024).setOffHeap(true);
+ * LSBOptions options = new LSBOptions().setCoverCache(cache);
+ * for (String file : files) LSB.hideFile("cover.png", file, options);
+ * </pre>
+ */
+public class CoverCache {
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private boolean offHeap;
+
+    private final LinkedHashMap<String, Cover> covers = new LinkedHashMap<String, Cover>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries 最多缓存的图片数
+     * @param maxBytes   缓存的像素数据的最大总字节数，超过它的单个图片不缓存
+     */
+    public CoverCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) throw new IllegalArgumentException("缓存的图片数应大于 0");
+        if (maxBytes < 1) throw new IllegalArgumentException("缓存的字节数应大于 0");
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * 设置之后缓存的像素数据是否放在堆外。整数、字节和 16 位的单个数据块的图片（PNG、JPEG、BMP 等解码得到的图片都是）可以放在堆外，
+     * 其他图片仍在堆中缓存
+     *
+     * @param offHeap 默认为 false
+     * @return 当前缓存
+     */
+    public synchronized CoverCache setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+
+        return this;
+    }
+
+    /**
+     * 返回解码后的图片，已经缓存且文件没有被修改时复制缓存的像素数据，否则解码图片并缓存
+     *
+     * @param image 图片路径
+     * @return 可以直接修改的图片
+     */
+    public BufferedImage get(String image) {
+        File file = new File(image);
+        String key = keyOf(file);
+        long modified = file.lastModified();
+        long length = file.length();
+
+        Cover cover = lookup(key, modified, length);
+        if (cover != null) return cover.copy();
+
+        BufferedImage decoded = ImageUtil.readImage(image); // 解码时不持有锁，不同图片可以同时解码
+        if (Cover.sizeOf(decoded) <= maxBytes) put(key, Cover.of(decoded, modified, length, isOffHeap()));
+
+        return decoded;
+    }
+
+    /**
+     * 只在缓存中查找图片，不解码
+     *
+     * @param image 图片路径
+     * @return 缓存的图片的宽度、高度等信息，没有缓存或文件已被修改时返回 null
+     */
+    synchronized Cover peek(String image) {
+        File file = new File(image);
+        Cover cover = covers.get(keyOf(file));
+
+        return cover != null && cover.matches(file.lastModified(), file.length()) ? cover : null;
+    }
+
+    public synchronized void clear() {
+        covers.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return 缓存的图片数
+     */
+    public synchronized int size() {
+        return covers.size();
+    }
+
+    /**
+     * @return 缓存的像素数据的总字节数
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return <code>get</code> 命中缓存的次数
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return <code>get</code> 需要解码图片的次数
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private synchronized Cover lookup(String key, long modified, long length) {
+        Cover cover = covers.get(key);
+        if (cover != null && cover.matches(modified, length)) {
+            hits++;
+            return cover;
+        }
+
+        misses++;
+        return null;
+    }
+
+    private synchronized void put(String key, Cover cover) {
+        Cover previous = covers.put(key, cover);
+        if (previous != null) bytes -= previous.bytes;
+        bytes += cover.bytes;
+
+        // 按最久没有使用的顺序淘汰，刚放入的图片在最后
+        Iterator<Cover> eldest = covers.values().iterator();
+        while (covers.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    private static String keyOf(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片文件时出错");
+        }
+    }
+
+    /**
+     * 缓存的一张图片。在堆中缓存时保存图片的副本；在堆外缓存时只保存颜色模型、样本模型和直接缓冲区中的像素数据
+     */
+    static class Cover {
+
+        final int width;
+        final int height;
+        final int type;
+        final int bands;
+        final long bytes;
+        private final long modified;
+        private final long length;
+
+        private final BufferedImage image;
+        private final ColorModel colorModel;
+        private final SampleModel sampleModel;
+        private final boolean premultiplied;
+        private final ByteBuffer data;
+
+        private Cover(BufferedImage image, ByteBuffer data, long bytes, long modified, long length) {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.type = image.getType();
+            this.bands = image.getRaster().getNumBands();
+            this.bytes = bytes;
+            this.modified = modified;
+            this.length = length;
+            this.image = data == null ? image : null;
+            this.colorModel = image.getColorModel();
+            this.sampleModel = image.getSampleModel();
+            this.premultiplied = image.isAlphaPremultiplied();
+            this.data = data;
+        }
+
+        /**
+         * 缓存解码得到的图片，调用者继续使用 decoded，所以总是复制它的像素数据
+         */
+        static Cover of(BufferedImage decoded, long modified, long length, boolean offHeap) {
+            DataBuffer buffer = decoded.getRaster().getDataBuffer();
+            long bytes = sizeOf(decoded);
+            if (!offHeap || !isPlain(decoded.getRaster()) || buffer.getNumBanks() != 1 || !isArrayBacked(buffer) || bytes > Integer.MAX_VALUE)
+                return new Cover(copyOf(decoded), null, bytes, modified, length);
+
+            ByteBuffer data = ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+            if (buffer instanceof DataBufferInt) data.asIntBuffer().put(((DataBufferInt) buffer).getData());
+            else if (buffer instanceof DataBufferByte) data.duplicate().put(((DataBufferByte) buffer).getData());
+            else data.asShortBuffer().put(((DataBufferUShort) buffer).getData());
+
+            return new Cover(decoded, data, bytes, modified, length);
+        }
+
+        /**
+         * @return 图片的像素数据的字节数
+         */
+        static long sizeOf(BufferedImage image) {
+            DataBuffer buffer = image.getRaster().getDataBuffer();
+
+            return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        }
+
+        boolean matches(long modified, long length) {
+            return this.modified == modified && this.length == length;
+        }
+
+        /**
+         * @return 与缓存的图片相同、可以修改的副本
+         */
+        BufferedImage copy() {
+            if (data == null) return copyOf(image);
+
+            WritableRaster raster = Raster.createWritableRaster(sampleModel, null);
+            DataBuffer buffer = raster.getDataBuffer();
+            ByteBuffer source = data.duplicate().order(ByteOrder.nativeOrder());
+            if (buffer instanceof DataBufferInt) source.asIntBuffer().get(((DataBufferInt) buffer).getData());
+            else if (buffer instanceof DataBufferByte) source.get(((DataBufferByte) buffer).getData());
+            else source.asShortBuffer().get(((DataBufferUShort) buffer).getData());
+
+            return new BufferedImage(colorModel, raster, premultiplied, null);
+        }
+
+        /**
+         * @return 栅格是否独占整个数据块，解码得到的图片都是
+         */
+        private static boolean isPlain(WritableRaster raster) {
+            return raster.getParent() == null && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0;
+        }
+
+        private static boolean isArrayBacked(DataBuffer buffer) {
+            return buffer instanceof DataBufferInt || buffer instanceof DataBufferByte || buffer instanceof DataBufferUShort;
+        }
+
+        /**
+         * 复制图片，同样布局的数据块直接复制数组
+         */
+        private static BufferedImage copyOf(BufferedImage image) {
+            WritableRaster source = image.getRaster();
+            WritableRaster raster = source.createCompatibleWritableRaster();
+            DataBuffer from = source.getDataBuffer();
+            DataBuffer to = raster.getDataBuffer();
+
+            if (isPlain(source) && isArrayBacked(from) && from.getClass() == to.getClass()
+                    && from.getNumBanks() == to.getNumBanks() && from.getSize() == to.getSize()) {
+                for (int bank = 0; bank < from.getNumBanks(); bank++)
+                    System.arraycopy(bankOf(from, bank), 0, bankOf(to, bank), 0, from.getSize());
+            } else {
+                raster.setRect(source);
+            }
+
+            return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+        }
+
+        private static Object bankOf(DataBuffer buffer, int bank) {
+            if (buffer instanceof DataBufferInt) return ((DataBufferInt) buffer).getData(bank);
+            if (buffer instanceof DataBufferByte) return ((DataBufferByte) buffer).getData(bank);
+
+            return ((DataBufferUShort) buffer).getData(bank);
+        }
+    }
+}
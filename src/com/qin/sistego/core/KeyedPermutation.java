@@ -0,0 +1,98 @@
+package com.qin.sistego.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 由密钥决定的 [from, from + count) 上的伪随机置换，按密钥分散写入信息时把信息中的第 i 个位置映射到图片中的像素（或样本）<br/>
+ * 用 4 轮 Feistel 网络对不小于 count 的最小的 2 的幂的定义域加密，位数为奇数时左右两半相差 1 位、每轮交换宽度；
+ * 结果超出 count 时继续加密（cycle walking），所以是一一映射，且平均不超过 2 次加密。<br/>
+ * 每个位置单独计算，不保存置换表，内存占用与图片大小无关，任意一段位置可以在不同的线程中独立计算。
+ * 置换只用于分散信息的位置，不是加密，不能代替对信息本身的加密
+ */
+final class KeyedPermutation {
+
+    private static final int ROUNDS = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long[] keys = new long[ROUNDS];
+    private final long from;
+    private final long count;
+    private final int leftBits;
+    private final int rightBits;
+
+    /**
+     * @param key   密钥，相同的密钥和范围总是得到相同的置换
+     * @param from  范围的起点
+     * @param count 范围内的位置数
+     */
+    KeyedPermutation(String key, long from, long count) {
+        ByteBuffer digest = ByteBuffer.wrap(sha256(key.getBytes(UTF_8)));
+        for (int i = 0; i < ROUNDS; i++) keys[i] = digest.getLong();
+
+        int bits = 2;
+        while (bits < 62 && 1L << bits < count) bits++;
+        this.from = from;
+        this.count = count;
+        this.rightBits = bits / 2;
+        this.leftBits = bits - rightBits;
+    }
+
+    /**
+     * @param index [from, from + count) 中的位置
+     * @return 置换后的位置，也在 [from, from + count) 中
+     */
+    long map(long index) {
+        long value = index - from;
+        do {
+            value = encrypt(value);
+        } while (value >= count);
+
+        return from + value;
+    }
+
+    /**
+     * 计算一段连续位置置换后的位置
+     *
+     * @param index 第一个位置
+     * @param out   保存置换后的位置的数组
+     * @param off   保存的起始位置
+     * @param n     位置数
+     */
+    void map(int index, int[] out, int off, int n) {
+        for (int i = 0; i < n; i++) out[off + i] = (int) map(index + i);
+    }
+
+    /**
+     * 每轮用右半部分混合的结果加密左半部分，再交换两半（连同它们的宽度），轮数为偶数，所以最后两半的宽度与开始时相同
+     */
+    private long encrypt(long value) {
+        long left = value >>> rightBits, right = value & (1L << rightBits) - 1;
+        int width = leftBits; // 当前左半部分的位数
+        for (int round = 0; round < ROUNDS; round++) {
+            long next = left ^ mix(right, keys[round], width);
+            left = right;
+            right = next;
+            width = leftBits + rightBits - width;
+        }
+
+        return left << rightBits | right;
+    }
+
+    /**
+     * 轮函数：与轮密钥异或后做乘法散列，取乘积最高的 bits 位，它们受输入的每一位影响
+     */
+    private static long mix(long half, long key, int bits) {
+        return (half ^ key) * 0x9e3779b97f4a7c15L >>> (64 - bits);
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 SHA-256", e); // 每个 Java 平台都必须支持
+        }
+    }
+}
@@ -3,145 +3,753 @@ package com.qin.sistego.core;
 import com.qin.sistego.exception.FileOperationException;
 import com.qin.sistego.exception.OutOfSizeException;
 import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.CompressUtil;
 import com.qin.sistego.util.FileUtil;
 import com.qin.sistego.util.ImageUtil;
+import com.qin.sistego.util.PngEncoder;
 
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 import java.io.*;
-import java.nio.ByteBuffer;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipException;
 
+/**
+ * 最低有效位隐写<br/>
+ * INT_ARGB 和 4BYTE_ABGR 的图片按 ARGB 整数写入，其他图片（灰度、16 位、调色板等）按原生样本布局写入，见 {@link RasterSamples}。
+ * 调色板图片中写入信息的像素会换成调色板中低位符合要求、颜色最接近的索引，调色板颜色稀疏时仍可能有明显的色差，
+ * 这样的图片最好先转换为真彩色再隐写
+ */
 public class LSB {
 
+    /**
+     * 以默认参数（每个通道 1 位）隐藏文件，图片中带有记录长度和校验和的头部
+     */
     public static String hideFile(String image, String file) throws OutOfSizeException {
-        byte[] pixelsBytes = ImageUtil.pixels2Bytes(image);
-        byte[] fileBytes = FileUtil.file2InfoBytes(file);
-        int fileLength = FileUtil.getInfoBytesContentLength(fileBytes);
+        return hideFile(image, file, new LSBOptions());
+    }
 
-        if (!checkLength(pixelsBytes, fileBytes))
-            throw new OutOfSizeException("文件大小不应超过 " + fileLength + " 字节");
+    /**
+     * 按指定的参数隐藏文件，参数记录在图片的头部中，提取时自动识别
+     *
+     * @param image   图片路径
+     * @param file    需要隐藏的文件路径
+     * @param options 隐写参数，为 null 时使用没有头部的旧格式，旧版本也能提取
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 文件超出了图片的容量
+     */
+    public static String hideFile(String image, String file, LSBOptions options) throws OutOfSizeException {
+        FileInputStream in = null;
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yy-MM-dd_HHmmss");
-        String suffix = FileUtil.getSuffix(image);
-        String output = image.substring(0, image.lastIndexOf(".")) +
-                "_" + dateFormat.format(new Date()) +
-                "." + suffix; // 输出的文件名
+        try {
+            in = new FileInputStream(file);
 
-        pixelsBytes = sequenceMixBits(pixelsBytes, fileBytes);
-        FileUtil.copyFile(image, output);
-        ImageUtil.bytes2Pixels(output, pixelsBytes);
+            return hide(image, new File(file).getName(), in, in.getChannel().size(), options);
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("读取需要隐藏的文件时出错");
+        } finally {
+            FileUtil.closeQuietly(in);
+        }
+    }
 
-        return output;
+    public static String hide(String image, String fileName, InputStream payload, long length) throws OutOfSizeException {
+        return hide(image, fileName, payload, length, new LSBOptions());
     }
 
+    /**
+     * 以文件的格式隐藏输入流中的内容，内容边读取边写入像素，不会整个读入内存，提取时与 <code>hideFile</code> 隐藏的文件相同
+     *
+     * @param image    图片路径
+     * @param fileName 提取时使用的文件名
+     * @param payload  需要隐藏的内容，读取 length 个字节，不会关闭它
+     * @param length   内容的字节数
+     * @param options  隐写参数，为 null 时使用没有头部的旧格式
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    public static String hide(String image, String fileName, InputStream payload, long length, LSBOptions options) throws OutOfSizeException {
+        return hide(image, FileUtil.infoHeaderBytes(fileName, length), payload, length, options, LSBHeader.MODE_FILE);
+    }
+
+    /**
+     * 以默认参数（每个通道 1 位）隐藏字符串，图片中带有记录长度和校验和的头部
+     */
     public static String hideString(String image, String message) throws OutOfSizeException {
-        byte[] pixelsBytes = ImageUtil.pixels2Bytes(image);
+        return hideString(image, message, new LSBOptions());
+    }
+
+    /**
+     * 按指定的参数隐藏字符串，参数记录在图片的头部中，提取时自动识别
+     *
+     * @param image   图片路径
+     * @param message 需要隐藏的字符串
+     * @param options 隐写参数，为 null 时使用没有头部的旧格式，旧版本也能提取
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 字符串超出了图片的容量
+     */
+    public static String hideString(String image, String message, LSBOptions options) throws OutOfSizeException {
+        byte[] stringBytes = message.getBytes();
+        byte[] stringLengthBytes = ByteUtil.int2Bytes(stringBytes.length);
+
+        return hide(image, stringLengthBytes, new ByteArrayInputStream(stringBytes), stringBytes.length, options, LSBHeader.MODE_STRING);
+    }
+
+    /**
+     * 在内存中的图片上隐藏文件内容，直接修改传入的图片，不读写任何文件。
+     * 图片可以由 {@link ImageUtil#decodeImage} 从收到的字节解码，隐写后由 {@link ImageUtil#encodeImage} 编码为无损格式
+     *
+     * @param image    图片，隐写直接修改它的像素
+     * @param fileName 提取时使用的文件名
+     * @param content  需要隐藏的文件内容
+     * @param options  隐写参数，为 null 时使用没有头部的旧格式
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    public static void hideFile(BufferedImage image, String fileName, byte[] content, LSBOptions options) throws OutOfSizeException {
+        hide(image, fileName, new ByteArrayInputStream(content), content.length, options);
+    }
+
+    /**
+     * 在内存中的图片上隐藏输入流中的内容，直接修改传入的图片，提取时与 <code>hideFile</code> 隐藏的文件相同
+     *
+     * @param image    图片，隐写直接修改它的像素
+     * @param fileName 提取时使用的文件名
+     * @param payload  需要隐藏的内容，读取 length 个字节，不会关闭它
+     * @param length   内容的字节数
+     * @param options  隐写参数，为 null 时使用没有头部的旧格式
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    public static void hide(BufferedImage image, String fileName, InputStream payload, long length, LSBOptions options)
+            throws OutOfSizeException {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_HIDE, null);
+        embed(image, FileUtil.infoHeaderBytes(fileName, length), payload, length, options, LSBHeader.MODE_FILE, timer);
+        timer.finish();
+    }
+
+    /**
+     * 在内存中的图片上隐藏字符串，直接修改传入的图片，不读写任何文件
+     *
+     * @param image   图片，隐写直接修改它的像素
+     * @param message 需要隐藏的字符串
+     * @param options 隐写参数，为 null 时使用没有头部的旧格式
+     * @throws OutOfSizeException 字符串超出了图片的容量
+     */
+    public static void hideString(BufferedImage image, String message, LSBOptions options) throws OutOfSizeException {
         byte[] stringBytes = message.getBytes();
         byte[] stringLengthBytes = ByteUtil.int2Bytes(stringBytes.length);
-        stringBytes = ByteUtil.concatBytes(stringLengthBytes, stringBytes);
 
-        if (!checkLength(pixelsBytes, stringBytes))
-            throw new OutOfSizeException("字符串的大小不应超过 " + (stringBytes.length - 4) + " 字节");
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_HIDE, null);
+        embed(image, stringLengthBytes, new ByteArrayInputStream(stringBytes), stringBytes.length, options, LSBHeader.MODE_STRING, timer);
+        timer.finish();
+    }
+
+    /**
+     * 读取图片文件，隐藏信息后写入新的图片文件。不压缩时先只读取文件头部检查容量，放不下时不必解码整个图片
+     *
+     * @param mode 隐藏的是文件还是字符串
+     */
+    private static String hide(String image, byte[] headerBytes, InputStream payload, long length, LSBOptions options, byte mode)
+            throws OutOfSizeException {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_HIDE, image);
+        // 压缩时内容的大小要写入之后才知道，这里只检查头部能否放下
+        boolean plain = options == null || options.getCompressionLevel() == CompressUtil.NO_COMPRESSION;
+        checkCapacity(capacityOf(image, options) - headerBytes.length, plain ? length : 0, mode);
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yy-MM-dd_HHmmss");
-        String suffix = FileUtil.getSuffix(image);
-        String output = image.substring(0, image.lastIndexOf(".")) +
-                "_" + dateFormat.format(new Date()) +
-                "." + suffix; // 输出的文件名
+        // 图片只解码一次，隐写直接修改解码得到的图片；指定了缓存时修改的是缓存的副本
+        CoverCache cache = options == null ? null : options.getCoverCache();
+        BufferedImage img = cache == null ? ImageUtil.readImage(image) : cache.get(image);
+        timer.mark(StegoMetrics.Stage.DECODE, pixelBytes(img));
+        embed(img, headerBytes, payload, length, options, mode, timer);
 
-        pixelsBytes = sequenceMixBits(pixelsBytes, stringBytes);
-        FileUtil.copyFile(image, output);
-        ImageUtil.bytes2Pixels(output, pixelsBytes);
+        String output = FileUtil.getOutputPath(image); // 输出的文件名
+        writeImage(img, output, options, timer);
+        timer.finish();
 
         return output;
     }
 
+    /**
+     * @return 统计中图片的像素字节数，每个像素按 4 个字节计算
+     */
+    private static long pixelBytes(BufferedImage img) {
+        return (long) img.getWidth() * img.getHeight() * 4;
+    }
+
+    /**
+     * 输出隐写后的图片，参数中指定了 PNG 编码器、且它支持该图片时由它编码。
+     * 统计各阶段时，写入文件的时间从编码的时间中分离出来。
+     * 输出文件已经由 {@link FileUtil#getOutputPath} 创建，各种方式都直接写入该文件，不会删除后重新创建；出错时删除它
+     */
+    private static void writeImage(BufferedImage img, String output, LSBOptions options, StageTimer timer) {
+        PngEncoder encoder = options == null ? null : options.getPngEncoder();
+        boolean png = encoder != null && FileUtil.getSuffix(output).equalsIgnoreCase("png") && PngEncoder.supports(img);
+        OutputStream out = null;
+        boolean completed = false;
+
+        try {
+            if (!timer.isEnabled()) {
+                if (png) encoder.write(img, output, options.pool());
+                else ImageUtil.writeImage(img, output);
+            } else if (png) {
+                out = new BufferedOutputStream(timer.track(new FileOutputStream(output), StegoMetrics.Stage.WRITE), 64 * 1024);
+                encoder.encode(img, out, options.pool());
+                out.close();
+            } else {
+                ImageUtil.writeImage(img, FileUtil.getSuffix(output),
+                        timer.track(new RandomAccessFile(output, "rw"), StegoMetrics.Stage.WRITE));
+            }
+            completed = true;
+        } catch (IOException e) {
+            throw new FileOperationException("将数据写入图片文件时出错");
+        } finally {
+            FileUtil.closeQuietly(out);
+            if (!completed) new File(output).delete(); // 不保留不完整的输出
+        }
+        timer.mark(StegoMetrics.Stage.ENCODE, pixelBytes(img));
+    }
+
+    /**
+     * 将信息头部和输入流中的内容依次写入图片，最后写入记录信息长度和校验和的 LSB 头部。
+     * 参数中指定了压缩级别、且内容可以压缩时，内容经过压缩后写入，并设置信息头部最后 4 个字节（内容的长度字段）的最高位
+     *
+     * @param mode 隐藏的是文件还是字符串
+     */
+    private static void embed(BufferedImage img, byte[] headerBytes, InputStream payload, long length, LSBOptions options, byte mode,
+                              StageTimer timer) throws OutOfSizeException {
+        ForkJoinPool pool = options == null ? null : options.pool();
+        int level = options == null ? CompressUtil.NO_COMPRESSION : options.getCompressionLevel();
+        long available = capacityOf((long) img.getWidth() * img.getHeight(), options) - headerBytes.length;
+        boolean compress = false;
+
+        if (level != CompressUtil.NO_COMPRESSION) {
+            try {
+                // 读取开头的样本判断是否值得压缩，样本之后再与剩余的内容拼接
+                byte[] sample = FileUtil.readFully(payload, (int) Math.min(length, CompressUtil.SAMPLE_BYTES));
+                payload = new SequenceInputStream(new ByteArrayInputStream(sample), payload);
+                compress = CompressUtil.isCompressible(sample, level);
+            } catch (EOFException e) {
+                throw new FileOperationException("需要隐藏的内容长度不足");
+            } catch (IOException e) {
+                throw new FileOperationException("读取需要隐藏的内容时出错");
+            }
+        }
+        if (compress) headerBytes[headerBytes.length - 4] |= (byte) (CompressUtil.COMPRESSED_FLAG >>> 24);
+        if (options != null && RasterSamples.isNative(img.getType())) {
+            timer.mark(StegoMetrics.Stage.PACK, 0);
+            embedSamples(img, headerBytes, payload, length, options, mode, compress);
+            timer.mark(StegoMetrics.Stage.EMBED, length);
+            return;
+        }
+        // 压缩后的大小在写入完成之前无法知道，写入时超出容量才会报错，这里只检查头部能否放下
+        checkCapacity(available, compress ? 0 : length, mode);
+
+        // 低内存占用时不转换整个图片，信息分段直接写入图片的像素
+        boolean inPlace = options != null && options.isLowFootprint();
+        KeyedPermutation permutation = options == null || options.getKey() == null ? null : pixelPermutation(img, options.getKey());
+        int[] pixels = inPlace ? null : ImageUtil.pixels2Ints(img, pool);
+        timer.mark(StegoMetrics.Stage.PACK, inPlace ? 0 : pixelBytes(img));
+        LSBOutputStream out = inPlace ? new LSBOutputStream(img, LSBHeader.PIXELS, options.getDepth(), pool, permutation)
+                : openPayload(pixels, options, permutation);
+
+        try {
+            out.write(headerBytes);
+            if (compress) {
+                OutputStream deflater = CompressUtil.newDeflaterStream(out, level);
+                FileUtil.copyStream(payload, deflater, length);
+                deflater.close();
+            } else {
+                FileUtil.copyStream(payload, out, length);
+            }
+            out.close();
+            LSBHeader header = options == null ? null : new LSBHeader(options.getDepth(), mode, permutation != null, out.size(), out.checksum());
+            if (inPlace) writeHeader(img, header);
+            else if (header != null) writeHeader(pixels, header);
+        } catch (LSBOutputStream.CapacityException e) {
+            throw new OutOfSizeException((compress ? "压缩后的" : "") + describe(mode) + "不应超过 " + available + " 字节");
+        } catch (EOFException e) {
+            throw new FileOperationException("需要隐藏的内容长度不足");
+        } catch (IOException e) {
+            throw new FileOperationException("读取需要隐藏的内容时出错");
+        }
+        timer.mark(StegoMetrics.Stage.EMBED, length);
+        if (inPlace) return;
+
+        ImageUtil.ints2Pixels(img, pixels, pool);
+        timer.mark(StegoMetrics.Stage.PACK, pixelBytes(img));
+    }
+
+    /**
+     * 按原生样本布局写入信息，见 {@link RasterSamples}。头部在信息之前写入，需要预先知道信息的长度，
+     * 所以压缩时先在内存中压缩内容，压缩后的大小超出容量时立即停止
+     */
+    private static void embedSamples(BufferedImage img, byte[] headerBytes, InputStream payload, long length, LSBOptions options,
+                                     byte mode, boolean compress) throws OutOfSizeException {
+        RasterSamples.checkDepth(img, options.getDepth());
+        long samples = RasterSamples.count(img);
+        final long available = SampleWriter.capacity(samples, options.getDepth()) - headerBytes.length;
+        checkCapacity(available, compress ? 0 : length, mode);
+
+        try {
+            if (compress) {
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                OutputStream bounded = new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (compressed.size() + len > available) throw new LSBOutputStream.CapacityException();
+                        compressed.write(b, off, len);
+                    }
+                };
+                OutputStream deflater = CompressUtil.newDeflaterStream(bounded, options.getCompressionLevel());
+                FileUtil.copyStream(payload, deflater, length);
+                deflater.close();
+                payload = new ByteArrayInputStream(compressed.toByteArray());
+                length = compressed.size();
+            }
+
+            String key = options.getKey();
+            SampleWriter writer = SampleWriter.create(samples, headerBytes, payload, length, options.getDepth(), mode, key != null);
+            if (key == null) RasterSamples.embed(img, writer);
+            else RasterSamples.embed(img, writer, RasterSamples.permutation(img, key));
+        } catch (LSBOutputStream.CapacityException e) {
+            throw new OutOfSizeException((compress ? "压缩后的" : "") + describe(mode) + "不应超过 " + available + " 字节");
+        } catch (EOFException e) {
+            throw new FileOperationException("需要隐藏的内容长度不足");
+        } catch (IOException e) {
+            throw new FileOperationException("读取需要隐藏的内容时出错");
+        }
+    }
+
+    /**
+     * 检查信息头部之后剩余的容量能否放下内容
+     *
+     * @param available 图片的容量减去信息头部的字节数，为负数时连头部都放不下
+     * @param length    内容的字节数，压缩时内容的大小事先不知道，传入 0 只检查头部
+     * @throws OutOfSizeException 头部或内容超出了图片的容量
+     */
+    static void checkCapacity(long available, long length, byte mode) throws OutOfSizeException {
+        if (available < 0) throw new OutOfSizeException("图片太小，放不下信息的头部");
+        if (length > available) throw new OutOfSizeException(describe(mode) + "不应超过 " + available + " 字节");
+    }
+
+    /**
+     * 超出容量时提示信息中对隐藏内容的称呼
+     */
+    private static String describe(byte mode) {
+        return mode == LSBHeader.MODE_FILE ? "文件大小" : "字符串的大小";
+    }
+
     public static String extractFile(String image) {
-        byte[] pixelsBytes = ImageUtil.pixels2Bytes(image);
-        byte[] fileBytes = deSequenceMix(pixelsBytes);
-        String fileName = FileUtil.getInfoBytesName(fileBytes);
-        fileBytes = FileUtil.getInfoBytesContent(fileBytes);
+        return extractFile(image, null);
+    }
+
+    /**
+     * 提取隐藏的文件，隐写的格式和深度由图片的头部决定
+     *
+     * @param image   图片路径
+     * @param options 提取时使用的参数（只使用其中的线程数和密钥），为 null 时在当前线程中提取
+     * @return 提取出的文件的路径
+     */
+    public static String extractFile(String image, LSBOptions options) {
+        String fileName = extract(image, null, options);
+
+        return new File(new File(image).getParent(), fileName).getAbsolutePath();
+    }
+
+    public static String extract(String image, OutputStream sink) {
+        return extract(image, sink, null);
+    }
+
+    /**
+     * 提取隐藏的文件，文件内容边解码边写入输出流，不会整个读入内存
+     *
+     * @param image   图片路径
+     * @param sink    接收文件内容的输出流，不会关闭它；为 null 时写入图片所在目录下与隐藏的文件同名的文件。
+     *                信息在全部写出之后才能校验，校验失败时输出流中已经写入了内容
+     * @param options 提取时使用的参数（只使用其中的线程数和密钥），为 null 时在当前线程中提取
+     * @return 隐藏的文件名
+     */
+    public static String extract(String image, OutputStream sink, LSBOptions options) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_EXTRACT, image);
+        BufferedImage img = ImageUtil.readImage(image);
+        timer.mark(StegoMetrics.Stage.DECODE, pixelBytes(img));
+        String fileName = extract(img, sink, options, new File(image).getParentFile(), timer);
+        timer.finish();
 
-        File output = new File(new File(image).getParent(), fileName);
+        return fileName;
+    }
+
+    /**
+     * 从内存中的图片提取隐藏的文件，不读写任何文件
+     *
+     * @param image   图片
+     * @param sink    接收文件内容的输出流，不会关闭它。信息在全部写出之后才能校验，校验失败时输出流中已经写入了内容
+     * @param options 提取时使用的参数（只使用其中的线程数和密钥），为 null 时在当前线程中提取
+     * @return 隐藏的文件名
+     */
+    public static String extract(BufferedImage image, OutputStream sink, LSBOptions options) {
+        if (sink == null) throw new NullPointerException("sink");
+
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_EXTRACT, null);
+        String fileName = extract(image, sink, options, null, timer);
+        timer.finish();
+
+        return fileName;
+    }
+
+    /**
+     * @param dir sink 为 null 时写入文件的目录
+     */
+    private static String extract(BufferedImage img, OutputStream sink, LSBOptions options, File dir, StageTimer timer) {
+        LSBHeader header = LSBHeader.read(img);
+        LSBHeader sampleHeader = header == null ? readSampleHeader(img) : null;
+        if (sampleHeader != null) {
+            try {
+                String fileName = sampleReader(img, sampleHeader, options).readFile(sink, dir);
+                timer.mark(StegoMetrics.Stage.EXTRACT, sampleHeader.length);
+
+                return fileName;
+            } catch (FileNotFoundException e) {
+                throw new FileOperationException("没有找到指定的文件");
+            } catch (IOException e) {
+                throw new FileOperationException("提取LSB隐写的文件时出错");
+            }
+        }
+        checkMode(header, LSBHeader.MODE_FILE, "图片中隐藏的不是文件");
+        LSBInputStream in = openPayload(img, header, options);
+        DataInputStream dis = new DataInputStream(in);
+        String fileName;
+        File output = null;
         BufferedOutputStream bos = null;
+        boolean completed = false;
 
         try {
-            bos = new BufferedOutputStream(new FileOutputStream(output));
-            bos.write(fileBytes);
+            // 依次只提取文件名长度、文件名、文件长度，最后只提取文件内容覆盖的像素
+            byte[] fileNameBytes = new byte[readLength(dis, in.remaining() - 8)];
+            dis.readFully(fileNameBytes);
+            fileName = new String(fileNameBytes);
+
+            if (sink == null) {
+                output = new File(dir, fileName);
+                bos = new BufferedOutputStream(new FileOutputStream(output));
+                sink = bos;
+            }
+            copyContent(in, dis, sink);
+            verify(in, header);
+            sink.flush();
+            completed = true;
         } catch (FileNotFoundException e) {
             throw new FileOperationException("没有找到指定的文件");
         } catch (IOException e) {
             throw new FileOperationException("提取LSB隐写的文件时出错");
         } finally {
-            if (bos != null) {
-                try {
-                    bos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            FileUtil.closeQuietly(bos);
+            if (!completed && output != null) output.delete(); // 不保留不完整或已损坏的文件
         }
+        timer.mark(StegoMetrics.Stage.EXTRACT, payloadLength(header));
 
-        return output.getAbsolutePath();
+        return fileName;
     }
 
     public static String extractString(String image) {
-        byte[] pixelsBytes = ImageUtil.pixels2Bytes(image);
-        byte[] infoBytes = deSequenceMix(pixelsBytes);
-        int infoLength = ByteUtil.bytes2Int(Arrays.copyOfRange(infoBytes, 0, 4));
-        infoBytes = Arrays.copyOfRange(infoBytes, 4, infoLength + 4);
-
-        return new String(infoBytes);
-    }
-
-    private static boolean checkLength(byte[] imageBytes, byte[] contentBytes) {
-        return contentBytes.length * 8 <= imageBytes.length;
-    }
-
-    private static byte[] sequenceMixBits(byte[] pixelsBytes, byte[] infoBytes) {
-        int pixelsBytesIndex = 0, infoBytesIndex = 0;
-
-        for (; infoBytesIndex < infoBytes.length; infoBytesIndex++) {
-            byte data = infoBytes[infoBytesIndex];
-            byte[] bits = new byte[8];
-            bits[7] = (byte) ((data >> 7) & 0x01);
-            bits[6] = (byte) ((data >> 6) & 0x01);
-            bits[5] = (byte) ((data >> 5) & 0x01);
-            bits[4] = (byte) ((data >> 4) & 0x01);
-            bits[3] = (byte) ((data >> 3) & 0x01);
-            bits[2] = (byte) ((data >> 2) & 0x01);
-            bits[1] = (byte) ((data >> 1) & 0x01);
-            bits[0] = (byte) (data & 0x01);
-
-            int bitIndex = 7;
-            for (; pixelsBytesIndex < pixelsBytes.length && bitIndex >= 0; pixelsBytesIndex++) {
-                byte mask = (byte) 254;
-                pixelsBytes[pixelsBytesIndex] = (byte) (pixelsBytes[pixelsBytesIndex] & mask | bits[bitIndex]);
-                bitIndex--;
+        return extractString(image, null);
+    }
+
+    /**
+     * 提取隐藏的字符串，隐写的格式和深度由图片的头部决定
+     *
+     * @param image   图片路径
+     * @param options 提取时使用的参数（只使用其中的线程数和密钥），为 null 时在当前线程中提取
+     * @return 隐藏的字符串
+     */
+    public static String extractString(String image, LSBOptions options) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_EXTRACT, image);
+        BufferedImage img = ImageUtil.readImage(image);
+        timer.mark(StegoMetrics.Stage.DECODE, pixelBytes(img));
+        String message = extractString(img, options, timer);
+        timer.finish();
+
+        return message;
+    }
+
+    /**
+     * 从内存中的图片提取隐藏的字符串，不读写任何文件
+     *
+     * @param img     图片
+     * @param options 提取时使用的参数（只使用其中的线程数和密钥），为 null 时在当前线程中提取
+     * @return 隐藏的字符串
+     */
+    public static String extractString(BufferedImage img, LSBOptions options) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.LSB_EXTRACT, null);
+        String message = extractString(img, options, timer);
+        timer.finish();
+
+        return message;
+    }
+
+    private static String extractString(BufferedImage img, LSBOptions options, StageTimer timer) {
+        LSBHeader header = LSBHeader.read(img);
+        LSBHeader sampleHeader = header == null ? readSampleHeader(img) : null;
+        String message;
+
+        try {
+            if (sampleHeader != null) {
+                message = sampleReader(img, sampleHeader, options).readString();
+                header = sampleHeader;
+            } else {
+                checkMode(header, LSBHeader.MODE_STRING, "图片中隐藏的不是字符串");
+                LSBInputStream in = openPayload(img, header, options);
+                DataInputStream dis = new DataInputStream(in);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                copyContent(in, dis, baos);
+                verify(in, header);
+                message = baos.toString();
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("提取LSB隐写的字符串时出错");
+        }
+        timer.mark(StegoMetrics.Stage.EXTRACT, payloadLength(header));
+
+        return message;
+    }
+
+    /**
+     * @return 统计中提取的信息的字节数，没有头部或旧版本的头部中没有记录时为 -1
+     */
+    private static long payloadLength(LSBHeader header) {
+        return header == null || !header.isChecked() ? -1 : header.length;
+    }
+
+    /**
+     * 探测图片中是否有 LSB 隐写的信息，不提取信息。只解码头部所在的最前面的 {@link LSBHeader#PIXELS} 个像素，
+     * PNG 等逐行存储的格式只需解码到第 32 行，适合快速筛选大量的图片；没有找到时再解码按原生样本布局写入的头部所在的前几行<br/>
+     * 没有头部的旧格式无法探测，结果为没有隐藏信息
+     *
+     * @param image 图片路径
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(String image) {
+        PayloadInfo info = probe(ImageUtil.readLeadingPixels(image, LSBHeader.PIXELS));
+        if (info.isPresent()) return info;
+
+        return probe(ImageUtil.readLeadingSamples(image, SampleWriter.HEADER_SAMPLES));
+    }
+
+    /**
+     * 探测内存中的图片是否有 LSB 隐写的信息，只读取头部所在的像素
+     *
+     * @param image 图片
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(BufferedImage image) {
+        LSBHeader header = LSBHeader.read(image);
+        if (header == null) {
+            try {
+                return RasterSamples.reader(image).probe();
+            } catch (IOException e) {
+                throw new FileOperationException("读取图片时出错");
             }
         }
 
-        return pixelsBytes;
+        PayloadInfo.Type type = PayloadInfo.typeOf(header.mode, LSBHeader.MODE_FILE, LSBHeader.MODE_STRING);
+        return new PayloadInfo(true, header.version, type, header.length, header.depth, header.isChecked());
+    }
+
+    /**
+     * 只读取图片文件的头部，计算能够隐藏的文件的最大字节数（不压缩时），不解码像素，适合在隐写之前快速筛选大量的图片
+     *
+     * @param image    图片路径
+     * @param fileName 隐藏时使用的文件名，文件名也保存在图片中
+     * @param options  隐写参数，为 null 时按没有头部的旧格式计算
+     * @return 文件的最大字节数，连文件名等头部都放不下时为 -1
+     */
+    public static long fileCapacity(String image, String fileName, LSBOptions options) {
+        return Math.max(capacityOf(image, options) - FileUtil.infoHeaderBytes(fileName, 0).length, -1);
+    }
+
+    /**
+     * 只读取图片文件的头部，计算能够隐藏的字符串的最大字节数（按平台默认编码，不压缩时），不解码像素
+     *
+     * @param image   图片路径
+     * @param options 隐写参数，为 null 时按没有头部的旧格式计算
+     * @return 字符串编码后的最大字节数，连记录长度的 4 个字节都放不下时为 -1
+     */
+    public static long stringCapacity(String image, LSBOptions options) {
+        return Math.max(capacityOf(image, options) - 4, -1);
+    }
+
+    /**
+     * 根据图片文件头部中的宽度、高度和图片类型计算能够隐藏的信息的字节数，不解码像素；图片已经缓存时直接使用缓存的信息
+     */
+    private static long capacityOf(String image, LSBOptions options) {
+        CoverCache.Cover cover = options == null || options.getCoverCache() == null ? null : options.getCoverCache().peek(image);
+        if (cover != null) {
+            long pixels = (long) cover.width * cover.height;
+            if (RasterSamples.isNative(cover.type)) return SampleWriter.capacity(pixels * cover.bands, options.getDepth());
+
+            return capacityOf(pixels, options);
+        }
+
+        Dimension size = ImageUtil.readSize(image);
+        long pixels = (long) size.width * size.height;
+        if (options == null) return capacityOf(pixels, null);
+
+        ImageTypeSpecifier type = ImageUtil.readImageType(image);
+        if (RasterSamples.isNative(type.getBufferedImageType()))
+            return SampleWriter.capacity(pixels * type.getNumBands(), options.getDepth());
+
+        return capacityOf(pixels, options);
+    }
+
+    /**
+     * 计算图片能够隐藏的信息的字节数（包括长度、文件名等字段）
+     *
+     * @param pixels  图片的像素数
+     * @param options 隐写参数，为 null 时按旧格式计算
+     */
+    private static long capacityOf(long pixels, LSBOptions options) {
+        if (options == null) return pixels / 2;
+
+        return Math.max(pixels - LSBHeader.PIXELS, 0) * options.getDepth() / 2;
+    }
+
+    /**
+     * 返回从头部之后开始写入信息的输出流，头部在信息写完、长度和校验和确定之后才写入；旧格式没有头部，从第一个像素开始写入
+     */
+    private static LSBOutputStream openPayload(int[] pixels, LSBOptions options, KeyedPermutation permutation) {
+        if (options == null) return new LSBOutputStream(pixels, 0, 1, null);
+
+        return new LSBOutputStream(pixels, LSBHeader.PIXELS, options.getDepth(), options.pool(), permutation);
+    }
+
+    /**
+     * @return 按密钥分散写入时头部之后的像素的置换
+     */
+    private static KeyedPermutation pixelPermutation(BufferedImage img, String key) {
+        return new KeyedPermutation(key, LSBHeader.PIXELS, Math.max((long) img.getWidth() * img.getHeight() - LSBHeader.PIXELS, 0));
+    }
+
+    /**
+     * 头部记录了信息按密钥分散写入时，返回由参数中的密钥得到的置换，否则返回 null
+     */
+    private static KeyedPermutation permutationOf(BufferedImage img, LSBHeader header, LSBOptions options) {
+        if (header == null || !header.scattered) return null;
+
+        String key = options == null ? null : options.getKey();
+        if (key == null) throw new FileOperationException("图片中的信息按密钥分散写入，提取时需要指定密钥");
+
+        return header.layout == LSBHeader.LAYOUT_SAMPLES ? RasterSamples.permutation(img, key) : pixelPermutation(img, key);
+    }
+
+    /**
+     * @return 按原生样本布局读取信息的输入流，信息按密钥分散写入时按参数中的密钥读取
+     */
+    private static SampleReader sampleReader(BufferedImage img, LSBHeader header, LSBOptions options) {
+        KeyedPermutation permutation = permutationOf(img, header, options);
+
+        return permutation == null ? RasterSamples.reader(img) : RasterSamples.reader(img, permutation);
+    }
+
+    private static void writeHeader(int[] pixels, LSBHeader header) {
+        byte[] headerBytes = header.toBytes();
+        LSBKernel.embed(pixels, 0, headerBytes, 0, headerBytes.length);
+    }
+
+    /**
+     * 只取出头部所在的像素，写入头部后写回图片
+     */
+    private static void writeHeader(BufferedImage img, LSBHeader header) {
+        int[] pixels = new int[LSBHeader.PIXELS];
+        ImageUtil.pixels2Ints(img, 0, pixels, 0, pixels.length);
+        writeHeader(pixels, header);
+        ImageUtil.ints2Pixels(img, 0, pixels, 0, pixels.length);
+    }
+
+    /**
+     * 根据图片的头部定位隐藏的信息，头部记录了信息的长度时只读取到信息的末尾；没有头部时按旧格式从第一个像素开始读取
+     */
+    private static LSBInputStream openPayload(BufferedImage img, LSBHeader header, LSBOptions options) {
+        ForkJoinPool pool = options == null ? null : options.pool();
+        if (header == null) return new LSBInputStream(img, 0, 1, pool);
+        if (!header.isChecked()) return new LSBInputStream(img, header.payloadPixel(), header.depth, pool);
+
+        return new LSBInputStream(img, header.payloadPixel(), header.depth, pool, header.length, permutationOf(img, header, options));
+    }
+
+    /**
+     * 图片中没有 ARGB 布局的头部时，检查是否有按原生样本布局隐藏的信息（由本类在灰度、16 位、调色板等图片中，
+     * 或由 {@link PngLSB}、{@link BmpLSB} 隐藏），只读取头部所在的样本
+     *
+     * @return 按原生样本布局写入的头部，没有时返回 null
+     */
+    private static LSBHeader readSampleHeader(BufferedImage img) {
+        try {
+            return RasterSamples.reader(img).readHeader();
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片时出错");
+        }
+    }
+
+    private static void checkMode(LSBHeader header, byte mode, String message) {
+        if (header != null && header.isChecked() && header.mode != mode) throw new FileOperationException(message);
     }
 
-    private static byte[] deSequenceMix(byte[] pixelsBytes) {
-        ByteBuffer buffer = ByteBuffer.allocate(pixelsBytes.length / 8);
-        byte bits;
+    /**
+     * 头部记录了校验和时，读完剩余的信息（压缩数据的结尾可能还没有读取）并比较校验和
+     */
+    private static void verify(LSBInputStream in, LSBHeader header) {
+        if (header == null || !header.isChecked()) return;
 
-        for (int i = 0; i < pixelsBytes.length; ) {
-            bits = (byte) (((pixelsBytes[i] & 0x01) << 7)
-                    | ((pixelsBytes[i + 1] & 0x01) << 6)
-                    | ((pixelsBytes[i + 2] & 0x01) << 5)
-                    | ((pixelsBytes[i + 3] & 0x01) << 4)
-                    | ((pixelsBytes[i + 4] & 0x01) << 3)
-                    | ((pixelsBytes[i + 5] & 0x01) << 2)
-                    | ((pixelsBytes[i + 6] & 0x01) << 1)
-                    | ((pixelsBytes[i + 7] & 0x01)));
-            buffer.put(bits);
-            i += 8;
+        in.skip(in.remaining());
+        if (in.checksum() != header.checksum) throw new FileOperationException("隐藏的信息已损坏，校验和不一致");
+    }
+
+    /**
+     * 读取内容的长度字段，并将内容写入输出流。长度字段的最高位表示内容经过压缩，此时其余的位是解压后的长度
+     */
+    private static void copyContent(LSBInputStream in, DataInputStream dis, OutputStream sink) throws IOException {
+        int length = readInt(dis);
+        if ((length & CompressUtil.COMPRESSED_FLAG) == 0) {
+            if (length > in.remaining()) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+            in.copyTo(sink, length);
+            return;
         }
 
-        return buffer.array();
+        InputStream inflater = CompressUtil.newInflaterStream(in);
+        try {
+            FileUtil.copyStream(inflater, sink, length & ~CompressUtil.COMPRESSED_FLAG);
+        } catch (ZipException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } finally {
+            FileUtil.closeQuietly(inflater);
+        }
+    }
+
+    /**
+     * 读取 4 字节的长度字段，并检查长度是否合法
+     *
+     * @param max 长度的最大值，超过时说明图片中没有按此格式隐藏信息
+     */
+    private static int readLength(DataInputStream dis, long max) throws IOException {
+        int length = readInt(dis);
+        if (length < 0 || length > max) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+
+        return length;
+    }
+
+    private static int readInt(DataInputStream dis) throws IOException {
+        try {
+            return dis.readInt();
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        }
     }
 }
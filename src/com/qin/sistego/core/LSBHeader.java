@@ -0,0 +1,165 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * LSB 隐写的头部，总是以每个通道 1 位的方式写在列优先顺序最前面的像素中<br/>
+ * 版本 1：魔数 "SISL"（4 字节）+ 版本（1 字节）+ 每个通道隐藏的位数（1 字节）+ 保留（2 字节），占 16 个像素<br/>
+ * 版本 2：魔数 "SISL"（4 字节）+ 版本（1 字节）+ 每个通道隐藏的位数（1 字节）+ 模式（1 字节）+ 布局（1 字节）
+ * + 信息的字节数（4 字节，无符号）+ 信息的 CRC-32C（4 字节），占 {@link #PIXELS} 个像素<br/>
+ * 布局为 {@link #LAYOUT_SAMPLES} 时，头部和信息按原生样本布局写在图片的样本中，见 {@link SampleWriter}。
+ * 布局字节的最高位 {@link #SCATTERED} 表示头部之后的信息按密钥置换后的顺序分散写入，见 {@link KeyedPermutation}<br/>
+ * 旧格式的图片没有头部，开头是 4 字节的长度字段；魔数作为长度时约为 1.4G，超出了任何图片的容量，所以两者不会混淆
+ */
+class LSBHeader {
+
+    static final int LENGTH = 16;
+    static final int PIXELS = LENGTH * 2;
+    static final byte VERSION = 2;
+
+    static final byte MODE_STRING = 0;
+    static final byte MODE_FILE = 1;
+
+    static final byte LAYOUT_ARGB = 0; // 按列优先顺序写在 ARGB 像素中，头部在信息写完之后写入
+    static final byte LAYOUT_SAMPLES = 1; // 按行优先顺序写在图片原生的样本中，校验和在信息之后
+    static final int SCATTERED = 0x80; // 布局字节中表示信息按密钥分散写入的标志位
+
+    private static final int V1_LENGTH = 8;
+    private static final byte[] MAGIC = {'S', 'I', 'S', 'L'};
+
+    final byte version;
+    final int depth;
+    final byte mode;
+    final byte layout;
+    final boolean scattered;
+    final long length;
+    final long checksum;
+
+    /**
+     * 创建当前版本的头部
+     *
+     * @param depth    每个通道隐藏的位数
+     * @param mode     隐藏的是文件还是字符串
+     * @param length   头部之后的信息的字节数
+     * @param checksum 头部之后的信息的 CRC-32C
+     */
+    LSBHeader(int depth, byte mode, long length, long checksum) {
+        this(depth, mode, false, length, checksum);
+    }
+
+    /**
+     * 创建当前版本的头部
+     *
+     * @param scattered 头部之后的信息是否按密钥分散写入
+     */
+    LSBHeader(int depth, byte mode, boolean scattered, long length, long checksum) {
+        this(VERSION, depth, mode, LAYOUT_ARGB, scattered, length, checksum);
+    }
+
+    /**
+     * 创建当前版本的、按原生样本布局写入的头部，校验和写在信息之后，不在头部中
+     *
+     * @param depth  每个样本隐藏的位数
+     * @param mode   隐藏的是文件还是字符串
+     * @param length    头部之后的信息的字节数
+     * @param scattered 头部之后的信息是否按密钥分散写入
+     */
+    static LSBHeader forSamples(int depth, byte mode, long length, boolean scattered) {
+        return new LSBHeader(VERSION, depth, mode, LAYOUT_SAMPLES, scattered, length, 0);
+    }
+
+    private LSBHeader(byte version, int depth, byte mode, byte layout, boolean scattered, long length, long checksum) {
+        this.version = version;
+        this.depth = depth;
+        this.mode = mode;
+        this.layout = layout;
+        this.scattered = scattered;
+        this.length = length;
+        this.checksum = checksum;
+    }
+
+    /**
+     * @return 头部之后信息开始的像素的位置
+     */
+    int payloadPixel() {
+        return version == 1 ? V1_LENGTH * 2 : PIXELS;
+    }
+
+    /**
+     * @return 头部中是否记录了信息的模式、字节数和校验和（版本 2 及以上）
+     */
+    boolean isChecked() {
+        return version >= 2;
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.put(MAGIC).put(version).put((byte) depth).put(mode).put((byte) (scattered ? layout | SCATTERED : layout));
+        buffer.putInt((int) length).putInt((int) checksum);
+
+        return buffer.array();
+    }
+
+    /**
+     * 读取图片中的头部，只解码头部所在的像素
+     *
+     * @param image 图片，也可以是只包含列优先顺序前 {@link #PIXELS} 个像素的区域
+     * @return 头部，图片是旧格式（没有头部）时返回 null
+     */
+    static LSBHeader read(BufferedImage image) {
+        long pixelCount = (long) image.getWidth() * image.getHeight();
+        if (pixelCount < V1_LENGTH * 2) return null;
+
+        byte[] bytes = extract(image, 0, V1_LENGTH);
+        if (!hasMagic(bytes)) return null;
+        if (bytes[4] == 1) return parse(bytes);
+
+        if (pixelCount < PIXELS) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        LSBHeader header = parse(ByteUtil.concatBytes(bytes, extract(image, V1_LENGTH * 2, LENGTH - V1_LENGTH)));
+        if (header.layout != LAYOUT_ARGB) throw new FileOperationException("不支持的隐写格式版本");
+
+        return header;
+    }
+
+    /**
+     * 解析头部的字节
+     *
+     * @param bytes 版本 1 的头部至少 8 个字节，版本 2 的头部 {@link #LENGTH} 个字节
+     * @return 头部，没有魔数时返回 null
+     */
+    static LSBHeader parse(byte[] bytes) {
+        if (!hasMagic(bytes)) return null;
+
+        byte version = bytes[4];
+        int depth = bytes[5];
+        if (version < 1 || version > VERSION || depth < LSBOptions.MIN_DEPTH || depth > LSBOptions.MAX_DEPTH)
+            throw new FileOperationException("不支持的隐写格式版本");
+        if (version == 1) return new LSBHeader(version, depth, (byte) -1, LAYOUT_ARGB, false, -1, 0);
+
+        byte layout = (byte) (bytes[7] & ~SCATTERED);
+        if (layout != LAYOUT_ARGB && layout != LAYOUT_SAMPLES) throw new FileOperationException("不支持的隐写格式版本");
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, V1_LENGTH, LENGTH - V1_LENGTH);
+
+        return new LSBHeader(version, depth, bytes[6], layout, (bytes[7] & SCATTERED) != 0,
+                buffer.getInt() & 0xffffffffL, buffer.getInt() & 0xffffffffL);
+    }
+
+    private static boolean hasMagic(byte[] bytes) {
+        return bytes.length >= MAGIC.length && Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC);
+    }
+
+    private static byte[] extract(BufferedImage image, int fromPixel, int length) {
+        int[] pixels = new int[length * 2];
+        byte[] bytes = new byte[length];
+        ImageUtil.pixels2Ints(image, fromPixel, pixels, 0, pixels.length);
+        LSBKernel.extract(pixels, 0, bytes, 0, length);
+
+        return bytes;
+    }
+}
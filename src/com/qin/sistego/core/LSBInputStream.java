@@ -0,0 +1,260 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 从图片像素的最低位中按顺序读取隐藏信息的输入流<br/>
+ * 每次只解码满足本次读取所需的像素（最多一块），不会解码整个图片的像素，也不会产生与图片等大的中间数组。
+ * 指定了置换时，信息中连续的像素从置换后的位置读取
+ */
+class LSBInputStream extends InputStream {
+
+    private static final int CHUNK_BYTES = 8190; // 每块解码的最大字节数，是各个深度下最小单元字节数的公倍数
+    private static final int PARALLEL_CHUNK_BYTES = CHUNK_BYTES * 64; // 并行解码时每轮解码的字节数
+
+    private final BufferedImage image;
+    private final int depth;
+    private final ForkJoinPool pool;
+    private final KeyedPermutation permutation;
+    private final int unitBytes;
+    private final int unitPixels;
+    private final int endPixel;
+    private int nextPixel;
+    private long undecoded; // 信息中还没有解码到缓冲区的字节数
+    private final CRC32C checksum = new CRC32C();
+
+    private final int[] pixels;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+
+    /**
+     * @param image     图片
+     * @param fromPixel 信息开始的像素在列优先顺序中的位置
+     * @param depth     每个通道隐藏的位数
+     */
+    LSBInputStream(BufferedImage image, int fromPixel, int depth) {
+        this(image, fromPixel, depth, null);
+    }
+
+    /**
+     * @param image     图片
+     * @param fromPixel 信息开始的像素在列优先顺序中的位置
+     * @param depth     每个通道隐藏的位数
+     * @param pool      <code>copyTo</code> 中并行解码使用的线程池，为 null 时在当前线程中解码
+     */
+    LSBInputStream(BufferedImage image, int fromPixel, int depth, ForkJoinPool pool) {
+        this(image, fromPixel, depth, pool, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param image     图片
+     * @param fromPixel 信息开始的像素在列优先顺序中的位置
+     * @param depth     每个通道隐藏的位数
+     * @param pool      <code>copyTo</code> 中并行解码使用的线程池，为 null 时在当前线程中解码
+     * @param length    信息的字节数，读取到这里为止，即使图片中还有更多的像素
+     */
+    LSBInputStream(BufferedImage image, int fromPixel, int depth, ForkJoinPool pool, long length) {
+        this(image, fromPixel, depth, pool, length, null);
+    }
+
+    /**
+     * @param image       图片
+     * @param fromPixel   信息开始的像素在列优先顺序中的位置
+     * @param depth       每个通道隐藏的位数
+     * @param pool        <code>copyTo</code> 中并行解码使用的线程池，为 null 时在当前线程中解码
+     * @param length      信息的字节数，读取到这里为止，即使图片中还有更多的像素
+     * @param permutation 从 fromPixel 开始的像素的置换，为 null 时按顺序读取
+     */
+    LSBInputStream(BufferedImage image, int fromPixel, int depth, ForkJoinPool pool, long length, KeyedPermutation permutation) {
+        this.image = image;
+        this.depth = depth;
+        this.pool = pool;
+        this.permutation = permutation;
+        this.unitBytes = LSBKernel.unitBytes(depth);
+        this.unitPixels = LSBKernel.unitPixels(depth);
+        this.endPixel = image.getWidth() * image.getHeight();
+        this.nextPixel = Math.min(fromPixel, endPixel);
+        this.undecoded = length;
+        this.buffer = new byte[CHUNK_BYTES];
+        this.pixels = new int[CHUNK_BYTES / unitBytes * unitPixels];
+    }
+
+    @Override
+    public int read() {
+        if (position == limit && !fill(1)) return -1;
+
+        checksum.update(buffer[position]);
+        return buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) return 0;
+        if (position == limit && !fill(len)) return -1;
+
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        checksum.update(buffer, position, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = 0;
+
+        while (skipped < n && (position < limit || fill((int) Math.min(n - skipped, CHUNK_BYTES)))) {
+            int step = (int) Math.min(n - skipped, limit - position);
+            checksum.update(buffer, position, step);
+            position += step;
+            skipped += step;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    /**
+     * 读取 length 个字节并写入输出流。指定了线程池时，大块的信息在线程池中并行解码
+     *
+     * @param out    输出流
+     * @param length 读取的字节数
+     * @throws IOException 写入时出错，或图片中的信息不足 length 个字节
+     */
+    void copyTo(OutputStream out, long length) throws IOException {
+        if (length > remaining()) throw new EOFException("图片中的信息长度不足");
+
+        int buffered = (int) Math.min(length, limit - position);
+        out.write(buffer, position, buffered);
+        checksum.update(buffer, position, buffered);
+        position += buffered;
+        length -= buffered;
+
+        if (pool == null) {
+            byte[] bytes = new byte[CHUNK_BYTES];
+            while (length > 0) {
+                int n = read(bytes, 0, (int) Math.min(length, bytes.length));
+                if (n == -1) throw new EOFException("图片中的信息长度不足");
+                out.write(bytes, 0, n);
+                length -= n;
+            }
+            return;
+        }
+
+        // 缓冲区已经读完，下一个像素位于单元的边界上，可以从这里开始分块并行解码
+        byte[] bytes = new byte[(int) Math.min(length, PARALLEL_CHUNK_BYTES)];
+        while (length > 0) {
+            int n = (int) Math.min(length, bytes.length);
+            int count = (int) LSBKernel.pixelsFor(n, depth);
+
+            pool.invoke(new DecodeTask(image, permutation, nextPixel, bytes, 0, n, depth));
+            out.write(bytes, 0, n);
+            checksum.update(bytes, 0, n);
+            nextPixel += count;
+            undecoded -= n;
+            length -= n;
+        }
+    }
+
+    /**
+     * @return 图片中还能读取的字节数
+     */
+    long remaining() {
+        return limit - position + Math.min(undecoded, (long) (endPixel - nextPixel) * depth / 2);
+    }
+
+    /**
+     * @return 已经读取的信息的 CRC-32C
+     */
+    long checksum() {
+        return checksum.getValue();
+    }
+
+    /**
+     * 解码至少能满足 wanted 个字节的最少的像素
+     */
+    private boolean fill(int wanted) {
+        int units = Math.min((wanted + unitBytes - 1) / unitBytes, CHUNK_BYTES / unitBytes);
+        int count = Math.min(units * unitPixels, endPixel - nextPixel);
+        int bytes = (int) Math.min(count * depth / 2, undecoded); // 每个像素 4 个通道，共 4 * depth 位
+        if (bytes == 0) return false;
+
+        readPixels(image, permutation, nextPixel, pixels, count);
+        LSBKernel.extract(pixels, 0, buffer, 0, bytes, depth);
+        nextPixel += count;
+        undecoded -= bytes;
+        position = 0;
+        limit = bytes;
+
+        return true;
+    }
+
+    /**
+     * 读取从 from 开始的 count 个像素，有置换时先在 out 中计算置换后的位置，再就地替换为像素
+     */
+    private static void readPixels(BufferedImage image, KeyedPermutation permutation, int from, int[] out, int count) {
+        if (permutation == null) {
+            ImageUtil.pixels2Ints(image, from, out, 0, count);
+        } else {
+            permutation.map(from, out, 0, count);
+            ImageUtil.pixels2Ints(image, out, out, 0, count);
+        }
+    }
+
+    /**
+     * 并行解码的任务，每个任务读取自己负责的像素并解码到结果中互不重叠的区域
+     */
+    private static class DecodeTask extends RecursiveAction {
+
+        private static final int MIN_BYTES = CHUNK_BYTES * 4;
+
+        private final BufferedImage image;
+        private final KeyedPermutation permutation;
+        private final int fromPixel;
+        private final byte[] out;
+        private final int off;
+        private final int len;
+        private final int depth;
+
+        DecodeTask(BufferedImage image, KeyedPermutation permutation, int fromPixel, byte[] out, int off, int len, int depth) {
+            this.image = image;
+            this.permutation = permutation;
+            this.fromPixel = fromPixel;
+            this.out = out;
+            this.off = off;
+            this.len = len;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (len <= MIN_BYTES) {
+                int count = (int) LSBKernel.pixelsFor(len, depth);
+                int[] pixels = new int[count];
+                readPixels(image, permutation, fromPixel, pixels, count);
+                LSBKernel.extract(pixels, 0, out, off, len, depth);
+                return;
+            }
+
+            int half = Math.max(len / 2 / CHUNK_BYTES * CHUNK_BYTES, CHUNK_BYTES);
+            int halfPixels = half / LSBKernel.unitBytes(depth) * LSBKernel.unitPixels(depth);
+            invokeAll(new DecodeTask(image, permutation, fromPixel, out, off, half, depth),
+                    new DecodeTask(image, permutation, fromPixel + halfPixels, out, off + half, len - half, depth));
+        }
+    }
+}
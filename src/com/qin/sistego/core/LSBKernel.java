@@ -0,0 +1,237 @@
+package com.qin.sistego.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LSB 隐写的位操作内核<br/>
+ * 像素按 ARGB 的 int 表示，每个像素的 4 个字节（A、R、G、B）各保存 1 位信息，
+ * 所以 1 个字节的信息正好占 2 个像素，高位在前。以整个 int 为单位操作，不为每个字节分配数组：
+ * <ul>
+ * <li>写入时查表得到 1 个字节的 8 位分散到 8 个字节最低位后的值，每个像素只需一次与、一次或</li>
+ * <li>读取时用一次乘法把一个像素 4 个字节的最低位聚集到结果的高 4 位</li>
+ * </ul>
+ * 结果与逐位写入、逐位读取完全相同<br/>
+ * 每个通道隐藏多位（depth 大于 1）时，每个像素保存 4 * depth 位，信息按位连续排列，高位在前
+ */
+final class LSBKernel {
+
+    private static final int CLEAR_MASK = 0xfefefefe; // 清除每个字节的最低位
+    private static final int LSB_MASK = 0x01010101; // 取出每个字节的最低位
+    private static final int GATHER = 0x10204080; // 把 4 个字节的最低位移动到第 31~28 位
+
+    private static final int PARALLEL_BYTES = 6 * 16384; // 并行时每个任务处理的最少字节数，是各个深度下单元字节数的公倍数
+
+    /**
+     * 每个字节的 8 位分散到 8 个字节的最低位之后的值，高 32 位对应第一个像素，低 32 位对应第二个像素
+     */
+    private static final long[] SPREAD = new long[256];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            long spread = 0;
+            for (int bit = 7; bit >= 0; bit--) {
+                spread = (spread << 8) | ((b >>> bit) & 1);
+            }
+            SPREAD[b] = spread;
+        }
+    }
+
+    private LSBKernel() {
+    }
+
+    /**
+     * 字节与像素恰好对齐的最小单元中的字节数，分块处理时每块的字节数应是它的整数倍
+     */
+    static int unitBytes(int depth) {
+        return depth == 3 ? 3 : depth == 4 ? 2 : 1;
+    }
+
+    /**
+     * 字节与像素恰好对齐的最小单元中的像素数
+     */
+    static int unitPixels(int depth) {
+        return depth == 1 || depth == 3 ? 2 : 1;
+    }
+
+    /**
+     * 保存 len 个字节需要的像素数
+     */
+    static long pixelsFor(long len, int depth) {
+        return (len * 2 + depth - 1) / depth;
+    }
+
+    /**
+     * 将信息写入像素的最低位
+     *
+     * @param pixels 像素数组（ARGB）
+     * @param from   写入的第一个像素的位置
+     * @param data   信息
+     * @param off    信息的起始位置
+     * @param len    信息的字节数，需要 <code>2 * len</code> 个像素
+     */
+    static void embed(int[] pixels, int from, byte[] data, int off, int len) {
+        for (int i = off, end = off + len, p = from; i < end; i++, p += 2) {
+            long spread = SPREAD[data[i] & 0xff];
+            pixels[p] = pixels[p] & CLEAR_MASK | (int) (spread >>> 32);
+            pixels[p + 1] = pixels[p + 1] & CLEAR_MASK | (int) spread;
+        }
+    }
+
+    /**
+     * 从像素的最低位读取信息
+     *
+     * @param pixels 像素数组（ARGB）
+     * @param from   读取的第一个像素的位置
+     * @param out    保存信息的数组
+     * @param off    保存的起始位置
+     * @param len    读取的字节数，需要 <code>2 * len</code> 个像素
+     */
+    static void extract(int[] pixels, int from, byte[] out, int off, int len) {
+        for (int i = off, end = off + len, p = from; i < end; i++, p += 2) {
+            int high = (pixels[p] & LSB_MASK) * GATHER >>> 28;
+            int low = (pixels[p + 1] & LSB_MASK) * GATHER >>> 28;
+            out[i] = (byte) (high << 4 | low);
+        }
+    }
+
+    /**
+     * 将信息写入像素中每个通道的低 depth 位，最后一个像素中多余的位以 0 补齐
+     *
+     * @param pixels 像素数组（ARGB）
+     * @param from   写入的第一个像素的位置
+     * @param data   信息
+     * @param off    信息的起始位置
+     * @param len    信息的字节数，需要 <code>pixelsFor(len, depth)</code> 个像素
+     * @param depth  每个通道隐藏的位数
+     */
+    static void embed(int[] pixels, int from, byte[] data, int off, int len, int depth) {
+        if (depth == 1) {
+            embed(pixels, from, data, off, len);
+            return;
+        }
+
+        int fieldMask = (1 << depth) - 1;
+        int clearMask = ~(fieldMask * LSB_MASK);
+        int pixelBits = 4 * depth;
+        long bitBuffer = 0;
+        int bits = 0;
+
+        for (int i = off, end = off + len, p = from; i < end || bits > 0; ) {
+            if (bits < pixelBits && i < end) {
+                bitBuffer = bitBuffer << 8 | (data[i++] & 0xff);
+                bits += 8;
+                continue;
+            }
+
+            int value;
+            if (bits >= pixelBits) {
+                value = (int) (bitBuffer >>> (bits - pixelBits));
+                bits -= pixelBits;
+            } else {
+                value = (int) (bitBuffer << (pixelBits - bits));
+                bits = 0;
+            }
+            pixels[p] = pixels[p] & clearMask
+                    | (value >>> 3 * depth & fieldMask) << 24
+                    | (value >>> 2 * depth & fieldMask) << 16
+                    | (value >>> depth & fieldMask) << 8
+                    | (value & fieldMask);
+            p++;
+        }
+    }
+
+    /**
+     * 从像素中每个通道的低 depth 位读取信息
+     *
+     * @param pixels 像素数组（ARGB）
+     * @param from   读取的第一个像素的位置
+     * @param out    保存信息的数组
+     * @param off    保存的起始位置
+     * @param len    读取的字节数，需要 <code>pixelsFor(len, depth)</code> 个像素
+     * @param depth  每个通道隐藏的位数
+     */
+    static void extract(int[] pixels, int from, byte[] out, int off, int len, int depth) {
+        if (depth == 1) {
+            extract(pixels, from, out, off, len);
+            return;
+        }
+
+        int fieldMask = (1 << depth) - 1;
+        int pixelBits = 4 * depth;
+        long bitBuffer = 0;
+        int bits = 0;
+
+        for (int i = off, end = off + len, p = from; i < end; ) {
+            if (bits < 8) {
+                int pixel = pixels[p++];
+                int value = (pixel >>> 24 & fieldMask) << 3 * depth
+                        | (pixel >>> 16 & fieldMask) << 2 * depth
+                        | (pixel >>> 8 & fieldMask) << depth
+                        | (pixel & fieldMask);
+                bitBuffer = bitBuffer << pixelBits | value;
+                bits += pixelBits;
+            } else {
+                out[i++] = (byte) (bitBuffer >>> (bits - 8));
+                bits -= 8;
+            }
+        }
+    }
+
+    /**
+     * 在线程池中并行地将信息写入像素，信息按单元对齐分块，各块写入的像素互不重叠
+     *
+     * @param pool 线程池，为 null 时在当前线程中执行
+     * @see #embed(int[], int, byte[], int, int, int)
+     */
+    static void embed(ForkJoinPool pool, int[] pixels, int from, byte[] data, int off, int len, int depth) {
+        if (pool == null || len <= PARALLEL_BYTES) embed(pixels, from, data, off, len, depth);
+        else pool.invoke(new KernelTask(true, pixels, from, data, off, len, depth));
+    }
+
+    /**
+     * 在线程池中并行地从像素读取信息
+     *
+     * @param pool 线程池，为 null 时在当前线程中执行
+     * @see #extract(int[], int, byte[], int, int, int)
+     */
+    static void extract(ForkJoinPool pool, int[] pixels, int from, byte[] out, int off, int len, int depth) {
+        if (pool == null || len <= PARALLEL_BYTES) extract(pixels, from, out, off, len, depth);
+        else pool.invoke(new KernelTask(false, pixels, from, out, off, len, depth));
+    }
+
+    private static class KernelTask extends RecursiveAction {
+
+        private final boolean embed;
+        private final int[] pixels;
+        private final int from;
+        private final byte[] data;
+        private final int off;
+        private final int len;
+        private final int depth;
+
+        KernelTask(boolean embed, int[] pixels, int from, byte[] data, int off, int len, int depth) {
+            this.embed = embed;
+            this.pixels = pixels;
+            this.from = from;
+            this.data = data;
+            this.off = off;
+            this.len = len;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (len <= PARALLEL_BYTES) {
+                if (embed) embed(pixels, from, data, off, len, depth);
+                else extract(pixels, from, data, off, len, depth);
+                return;
+            }
+
+            int half = Math.max(len / 2 / PARALLEL_BYTES * PARALLEL_BYTES, PARALLEL_BYTES); // 按单元对齐，使后一半从像素边界开始
+            int halfPixels = half / unitBytes(depth) * unitPixels(depth);
+            invokeAll(new KernelTask(embed, pixels, from, data, off, half, depth),
+                    new KernelTask(embed, pixels, from + halfPixels, data, off + half, len - half, depth));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.util.CompressUtil;
+import com.qin.sistego.util.PngEncoder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * LSB 隐写的参数<br/>
+ * 使用这些参数隐写时，会在图片最前面的像素中写入记录参数的头部，提取时根据头部自动还原参数
+ */
+public class LSBOptions {
+
+    public static final int MIN_DEPTH = 1;
+    public static final int MAX_DEPTH = 4;
+
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+    private int depth = 1;
+    private int parallelism = 1;
+    private int compressionLevel = CompressUtil.NO_COMPRESSION;
+    private PngEncoder pngEncoder;
+    private CoverCache coverCache;
+    private boolean lowFootprint;
+    private String key;
+
+    /**
+     * @return 每个颜色通道（A、R、G、B）隐藏的位数
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * 设置每个颜色通道隐藏的位数，位数越多，同样大小的信息需要的像素越少，但对图片的改动也越明显
+     *
+     * @param depth 1 到 4 之间的位数，默认为 1
+     * @return 当前参数对象
+     */
+    public LSBOptions setDepth(int depth) {
+        if (depth < MIN_DEPTH || depth > MAX_DEPTH)
+            throw new IllegalArgumentException("每个通道隐藏的位数应在 " + MIN_DEPTH + " 到 " + MAX_DEPTH + " 之间");
+        this.depth = depth;
+
+        return this;
+    }
+
+    /**
+     * @return 隐写和提取时使用的线程数
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 设置隐写和提取时使用的线程数。大于 1 时，像素的读写按行分条带、位操作按信息分块，在 <code>ForkJoinPool</code> 中并行执行，
+     * 输出的图片与单线程时完全相同
+     *
+     * @param parallelism 线程数，默认为 1（在调用线程中执行）
+     * @return 当前参数对象
+     */
+    public LSBOptions setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("线程数应大于 0");
+        this.parallelism = parallelism;
+
+        return this;
+    }
+
+    /**
+     * @return 隐藏前压缩信息使用的 Deflate 压缩级别
+     */
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * 设置隐藏前压缩信息使用的 Deflate 压缩级别。压缩后需要的像素更少，文本、日志等信息通常能减小数倍；
+     * 开头的样本无法压缩的信息（图片、压缩包等）会自动跳过压缩，原样隐藏。提取时根据信息中的标志位自动解压
+     *
+     * @param compressionLevel 0（不压缩）到 9，或 -1（Deflate 的默认级别），默认为 0
+     * @return 当前参数对象
+     */
+    public LSBOptions setCompressionLevel(int compressionLevel) {
+        CompressUtil.checkLevel(compressionLevel);
+        this.compressionLevel = compressionLevel;
+
+        return this;
+    }
+
+    /**
+     * @return 输出 PNG 图片使用的编码器，为 null 时使用 <code>ImageIO</code>
+     */
+    public PngEncoder getPngEncoder() {
+        return pngEncoder;
+    }
+
+    /**
+     * 设置输出 PNG 图片使用的编码器。大图片的输出时间主要花在单线程的 Deflate 压缩上，可以用较低的压缩级别换取速度；
+     * 线程数大于 1 时，编码器在同一个线程池中分块并行压缩
+     *
+     * @param pngEncoder 编码器，默认为 null（使用 <code>ImageIO</code>），它不支持的图片类型仍使用 <code>ImageIO</code>
+     * @return 当前参数对象
+     */
+    public LSBOptions setPngEncoder(PngEncoder pngEncoder) {
+        this.pngEncoder = pngEncoder;
+
+        return this;
+    }
+
+    /**
+     * @return 解码后的载体图片的缓存，为 null 时每次都解码图片
+     */
+    public CoverCache getCoverCache() {
+        return coverCache;
+    }
+
+    /**
+     * 设置解码后的载体图片的缓存。反复向同一图片中隐藏信息时，解码一次之后在缓存的像素数据的副本上隐写，
+     * 检查容量时也不再读取图片的头部
+     *
+     * @param coverCache 缓存，默认为 null（不缓存）
+     * @return 当前参数对象
+     */
+    public LSBOptions setCoverCache(CoverCache coverCache) {
+        this.coverCache = coverCache;
+
+        return this;
+    }
+
+    public boolean isLowFootprint() {
+        return lowFootprint;
+    }
+
+    /**
+     * 设置是否以低内存占用的方式隐写。默认先把 ARGB 图片的全部像素转换为与图片等大的 int 数组，写入信息后再写回图片；
+     * 开启后不再转换整个图片，每次只取出一段像素写入信息后直接写回，内存中只有解码得到的一份像素数据，
+     * 只读写写入了信息的像素，输出的图片与默认方式完全相同。按原生样本布局隐写的图片总是逐行直接写入，不受此参数影响<br/>
+     * 需要像素数据不占用堆内存时，未压缩的 BMP 图片可以使用 {@link BmpLSB} 直接修改映射到内存的文件
+     *
+     * @param lowFootprint 默认为 false
+     * @return 当前参数对象
+     */
+    public LSBOptions setLowFootprint(boolean lowFootprint) {
+        this.lowFootprint = lowFootprint;
+
+        return this;
+    }
+
+    /**
+     * @return 分散写入信息的密钥，为 null 时按顺序写入
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 设置密钥后，头部之后的信息不再从第一个像素（或样本）开始连续写入，而是按由密钥决定的伪随机顺序分散写入整个图片，
+     * 提取时需要在参数中指定同样的密钥。位置由密钥和图片大小逐个计算，不保存置换表，内存占用与顺序写入时相同，并行时同样分块执行<br/>
+     * 这样隐藏的信息只能由 {@link LSB} 提取，{@link PngLSB}、{@link BmpLSB} 不支持分散写入
+     *
+     * @param key 密钥，默认为 null（按顺序写入）
+     * @return 当前参数对象
+     */
+    public LSBOptions setKey(String key) {
+        this.key = key;
+
+        return this;
+    }
+
+    /**
+     * 获取执行并行任务的线程池，同一线程数的线程池在所有调用之间共享
+     *
+     * @return 线程池，单线程时返回 null
+     */
+    ForkJoinPool pool() {
+        if (parallelism == 1) return null;
+
+        ForkJoinPool pool = POOLS.get(parallelism);
+        if (pool == null) {
+            ForkJoinPool created = new ForkJoinPool(parallelism);
+            pool = POOLS.putIfAbsent(parallelism, created);
+            if (pool == null) pool = created;
+            else created.shutdown();
+        }
+
+        return pool;
+    }
+}
@@ -0,0 +1,221 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.ImageUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 按顺序将信息写入像素最低位的输出流，是 {@link LSBInputStream} 的逆操作<br/>
+ * 写入的信息只在一个定长的缓冲区中暂存，缓冲区满时写入像素，所以内存占用与信息的大小无关。
+ * 像素可以是整个图片转换得到的数组，也可以是图片本身：此时每次只取出缓冲区需要的一段像素，写入信息后立即写回图片<br/>
+ * 指定了置换时，信息中连续的像素按置换后的位置分散写入，每块只计算这一块像素的位置，并行时各个任务独立计算
+ */
+class LSBOutputStream extends OutputStream {
+
+    private static final int CHUNK_BYTES = 8190; // 每块写入的字节数，是各个深度下最小单元字节数的公倍数
+    private static final int PARALLEL_CHUNK_BYTES = CHUNK_BYTES * 64; // 并行写入时每块的字节数
+
+    private final int[] pixels; // 写入图片本身时为 null
+    private final BufferedImage image;
+    private final KeyedPermutation permutation;
+    private final int[] segment; // 在当前线程中读写一段像素时的暂存区
+    private final int[] positions; // 在当前线程中分散写入时一段像素置换后的位置
+    private final int endPixel;
+    private final int depth;
+    private final ForkJoinPool pool;
+    private int nextPixel;
+    private long size;
+    private final CRC32C checksum = new CRC32C();
+
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    /**
+     * @param pixels    像素数组（ARGB，列优先顺序）
+     * @param fromPixel 信息开始的像素的位置
+     * @param depth     每个通道隐藏的位数
+     * @param pool      并行写入使用的线程池，为 null 时在当前线程中写入
+     */
+    LSBOutputStream(int[] pixels, int fromPixel, int depth, ForkJoinPool pool) {
+        this(pixels, null, pixels.length, fromPixel, depth, pool, null);
+    }
+
+    /**
+     * @param pixels      像素数组（ARGB，列优先顺序）
+     * @param fromPixel   信息开始的像素的位置
+     * @param depth       每个通道隐藏的位数
+     * @param pool        并行写入使用的线程池，为 null 时在当前线程中写入
+     * @param permutation 从 fromPixel 开始的像素的置换，为 null 时按顺序写入
+     */
+    LSBOutputStream(int[] pixels, int fromPixel, int depth, ForkJoinPool pool, KeyedPermutation permutation) {
+        this(pixels, null, pixels.length, fromPixel, depth, pool, permutation);
+    }
+
+    /**
+     * @param image     图片，信息直接写入它的像素
+     * @param fromPixel 信息开始的像素在列优先顺序中的位置
+     * @param depth     每个通道隐藏的位数
+     * @param pool      并行写入使用的线程池，为 null 时在当前线程中写入
+     * @param permutation 从 fromPixel 开始的像素的置换，为 null 时按顺序写入
+     */
+    LSBOutputStream(BufferedImage image, int fromPixel, int depth, ForkJoinPool pool, KeyedPermutation permutation) {
+        this(null, image, image.getWidth() * image.getHeight(), fromPixel, depth, pool, permutation);
+    }
+
+    private LSBOutputStream(int[] pixels, BufferedImage image, int endPixel, int fromPixel, int depth, ForkJoinPool pool,
+                            KeyedPermutation permutation) {
+        this.depth = depth;
+        this.pool = pool;
+        this.nextPixel = fromPixel;
+        this.endPixel = endPixel;
+        this.pixels = pixels;
+        this.image = image;
+        this.permutation = permutation;
+        this.buffer = new byte[pool == null ? CHUNK_BYTES : PARALLEL_CHUNK_BYTES];
+
+        // 并行分散写入时每个任务使用自己的暂存区
+        int segmentPixels = (int) LSBKernel.pixelsFor(buffer.length, depth);
+        boolean scatterHere = permutation != null && pool == null;
+        this.segment = image != null && permutation == null || scatterHere ? new int[segmentPixels] : null;
+        this.positions = scatterHere ? new int[segmentPixels] : null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) flushBuffer();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) flushBuffer();
+
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 将缓冲区中剩余的信息写入像素，最后一个像素中多余的位以 0 补齐。关闭之后不能再写入
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+
+        flushBuffer();
+        closed = true;
+    }
+
+    /**
+     * @return 已经写入像素的字节数
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return 已经写入像素的信息的 CRC-32C
+     */
+    long checksum() {
+        return checksum.getValue();
+    }
+
+    /**
+     * 缓冲区的大小是单元字节数的整数倍，所以除最后一次外，每次写入都结束在像素的边界上
+     */
+    private void flushBuffer() throws IOException {
+        if (closed) throw new IOException("输出流已关闭");
+        if (count == 0) return;
+
+        long needed = LSBKernel.pixelsFor(count, depth);
+        if (needed > endPixel - nextPixel) throw new CapacityException();
+
+        if (permutation != null) {
+            if (pool == null) embedScattered(nextPixel, 0, count, positions, segment);
+            else pool.invoke(new ScatterTask(nextPixel, 0, count));
+        } else if (image == null) {
+            LSBKernel.embed(pool, pixels, nextPixel, buffer, 0, count, depth);
+        } else {
+            ImageUtil.pixels2Ints(image, nextPixel, segment, 0, (int) needed);
+            LSBKernel.embed(pool, segment, 0, buffer, 0, count, depth);
+            ImageUtil.ints2Pixels(image, nextPixel, segment, 0, (int) needed);
+        }
+        checksum.update(buffer, 0, count);
+        nextPixel += (int) needed;
+        size += count;
+        count = 0;
+    }
+
+    /**
+     * 取出置换后的一段像素，写入缓冲区中 [off, off + len) 的信息后放回原处
+     *
+     * @param fromPixel 这段像素在置换之前的第一个位置
+     * @param positions 保存置换后的位置的暂存区
+     * @param segment   保存像素的暂存区
+     */
+    private void embedScattered(int fromPixel, int off, int len, int[] positions, int[] segment) {
+        int n = (int) LSBKernel.pixelsFor(len, depth);
+        permutation.map(fromPixel, positions, 0, n);
+
+        if (image != null) {
+            ImageUtil.pixels2Ints(image, positions, segment, 0, n);
+        } else {
+            for (int i = 0; i < n; i++) segment[i] = pixels[positions[i]];
+        }
+        LSBKernel.embed(segment, 0, buffer, off, len, depth);
+        if (image != null) {
+            ImageUtil.ints2Pixels(image, positions, segment, 0, n);
+        } else {
+            for (int i = 0; i < n; i++) pixels[positions[i]] = segment[i];
+        }
+    }
+
+    /**
+     * 并行分散写入的任务，信息按单元对齐分块，置换是一一映射，所以各块写入的像素互不重叠
+     */
+    private class ScatterTask extends RecursiveAction {
+
+        private final int fromPixel;
+        private final int off;
+        private final int len;
+
+        ScatterTask(int fromPixel, int off, int len) {
+            this.fromPixel = fromPixel;
+            this.off = off;
+            this.len = len;
+        }
+
+        @Override
+        protected void compute() {
+            if (len <= CHUNK_BYTES) {
+                int n = (int) LSBKernel.pixelsFor(len, depth);
+                embedScattered(fromPixel, off, len, new int[n], new int[n]);
+                return;
+            }
+
+            int half = Math.max(len / 2 / CHUNK_BYTES * CHUNK_BYTES, CHUNK_BYTES);
+            int halfPixels = half / LSBKernel.unitBytes(depth) * LSBKernel.unitPixels(depth);
+            invokeAll(new ScatterTask(fromPixel, off, half), new ScatterTask(fromPixel + halfPixels, off + half, len - half));
+        }
+    }
+
+    /**
+     * 写入的信息超出了图片的容量
+     */
+    static class CapacityException extends IOException {
+
+        CapacityException() {
+            super("信息超出了图片的容量");
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.qin.sistego.core;
+
+/**
+ * <code>probe</code> 的结果：图片中是否有带格式头部（或尾部结构）的隐藏信息，以及其中记录的信息<br/>
+ * 旧格式隐写的图片没有头部，不提取就无法与普通图片区分，所以探测结果为没有隐藏信息
+ */
+public class PayloadInfo {
+
+    public enum Type {
+        FILE, STRING, UNKNOWN
+    }
+
+    static final PayloadInfo NONE = new PayloadInfo(false, 0, Type.UNKNOWN, -1, 0, false);
+
+    private final boolean present;
+    private final int version;
+    private final Type type;
+    private final long length;
+    private final int depth;
+    private final boolean checked;
+
+    PayloadInfo(boolean present, int version, Type type, long length, int depth, boolean checked) {
+        this.present = present;
+        this.version = version;
+        this.type = type;
+        this.length = length;
+        this.depth = depth;
+        this.checked = checked;
+    }
+
+    static Type typeOf(byte mode, byte fileMode, byte stringMode) {
+        return mode == fileMode ? Type.FILE : mode == stringMode ? Type.STRING : Type.UNKNOWN;
+    }
+
+    /**
+     * @return 图片中是否有隐藏信息
+     */
+    public boolean isPresent() {
+        return present;
+    }
+
+    /**
+     * @return 格式的版本，没有隐藏信息时为 0
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return 隐藏的是文件还是字符串，旧版本的头部中没有记录时为 <code>UNKNOWN</code>
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return 图片中保存的信息的字节数（包括文件名、长度等字段，经过压缩或编码时是处理后的字节数），未知时为 -1
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return LSB 隐写时每个通道隐藏的位数，文件末尾隐写时为 0
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return 是否记录了校验和，提取时会校验信息是否完整
+     */
+    public boolean isChecked() {
+        return checked;
+    }
+
+    @Override
+    public String toString() {
+        if (!present) return "没有隐藏信息";
+
+        return "版本 " + version + "，" + (type == Type.FILE ? "文件" : type == Type.STRING ? "字符串" : "未知类型")
+                + (length >= 0 ? "，" + length + " 字节" : "") + (depth > 0 ? "，每个通道 " + depth + " 位" : "")
+                + (checked ? "，有校验和" : "");
+    }
+}
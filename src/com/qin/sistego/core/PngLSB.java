@@ -0,0 +1,260 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.exception.OutOfSizeException;
+import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.FileUtil;
+import com.qin.sistego.util.PngEncoder;
+import com.qin.sistego.util.PngScanlineReader;
+import com.qin.sistego.util.PngScanlineWriter;
+
+import java.io.*;
+
+/**
+ * PNG 图片的流式 LSB 隐写：逐行解压像素数据，在这一行的样本中写入或读取信息，再逐行压缩写出，
+ * 不解码整个图片，内存占用只有几行像素，与图片的大小无关，适合上亿像素的大图片<br/>
+ * 信息按原生样本布局写入（见 {@link SampleWriter}），IDAT 之外的块（调色板、色彩空间、文本等）原样保留。
+ * 支持 8 位和 16 位的灰度、灰度 + 透明、RGB、RGBA 图片，不支持调色板和隔行扫描的图片。
+ * 头部在信息之前写入，需要预先知道信息的长度，所以不能压缩信息；逐行顺序处理，所以不能按密钥分散写入
+ */
+public class PngLSB {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 以默认参数（每个样本 1 位）隐藏文件
+     */
+    public static String hideFile(String image, String file) throws OutOfSizeException {
+        return hideFile(image, file, null);
+    }
+
+    /**
+     * 按指定的参数隐藏文件，文件内容边读取边写入，不会整个读入内存
+     *
+     * @param image   PNG 图片路径
+     * @param file    需要隐藏的文件路径
+     * @param options 隐写参数（使用其中的深度和 PNG 编码器的压缩级别、过滤方式，不能设置压缩级别和密钥），为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 文件超出了图片的容量
+     */
+    public static String hideFile(String image, String file, LSBOptions options) throws OutOfSizeException {
+        FileInputStream in = null;
+
+        try {
+            in = new FileInputStream(file);
+
+            return hide(image, new File(file).getName(), in, in.getChannel().size(), options);
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("读取需要隐藏的文件时出错");
+        } finally {
+            FileUtil.closeQuietly(in);
+        }
+    }
+
+    /**
+     * 以文件的格式隐藏输入流中的内容，提取时与 <code>hideFile</code> 隐藏的文件相同
+     *
+     * @param image    PNG 图片路径
+     * @param fileName 提取时使用的文件名
+     * @param payload  需要隐藏的内容，读取 length 个字节，不会关闭它
+     * @param length   内容的字节数
+     * @param options  隐写参数，不能设置压缩级别和密钥，为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    public static String hide(String image, String fileName, InputStream payload, long length, LSBOptions options) throws OutOfSizeException {
+        return hide(image, FileUtil.infoHeaderBytes(fileName, length), payload, length, options, LSBHeader.MODE_FILE);
+    }
+
+    /**
+     * 以默认参数（每个样本 1 位）隐藏字符串
+     */
+    public static String hideString(String image, String message) throws OutOfSizeException {
+        return hideString(image, message, null);
+    }
+
+    /**
+     * 按指定的参数隐藏字符串
+     *
+     * @param image   PNG 图片路径
+     * @param message 需要隐藏的字符串
+     * @param options 隐写参数，不能设置压缩级别和密钥，为 null 时使用默认参数
+     * @return 输出的图片路径
+     * @throws OutOfSizeException 字符串超出了图片的容量
+     */
+    public static String hideString(String image, String message, LSBOptions options) throws OutOfSizeException {
+        byte[] stringBytes = message.getBytes();
+        byte[] stringLengthBytes = ByteUtil.int2Bytes(stringBytes.length);
+
+        return hide(image, stringLengthBytes, new ByteArrayInputStream(stringBytes), stringBytes.length, options, LSBHeader.MODE_STRING);
+    }
+
+    /**
+     * 逐行读取图片、写入信息并输出。先只读取 IHDR 检查容量，放不下时不创建输出文件
+     *
+     * @param mode 隐藏的是文件还是字符串
+     */
+    private static String hide(String image, byte[] headerBytes, InputStream payload, long length, LSBOptions options, byte mode)
+            throws OutOfSizeException {
+        PngEncoder encoder = options == null || options.getPngEncoder() == null ? new PngEncoder() : options.getPngEncoder();
+        PngScanlineReader reader = null;
+        OutputStream out = null;
+        String output = null;
+        boolean completed = false;
+
+        try {
+            reader = open(image);
+            int samplesPerRow = reader.getWidth() * reader.getChannels();
+            SampleWriter writer = SampleWriter.create((long) samplesPerRow * reader.getHeight(), headerBytes, payload, length, options, mode);
+
+            output = FileUtil.getOutputPath(image);
+            out = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE);
+            out.write(reader.getHead());
+
+            PngScanlineWriter rows = new PngScanlineWriter(out, reader.getBytesPerPixel(), reader.getRowLength(),
+                    encoder.getLevel(), encoder.getFilter());
+            byte[] row = new byte[reader.getRowLength()];
+            int step = reader.getBitDepth() / 8;
+            while (reader.readRow(row)) {
+                writer.embed(row, step - 1, step, samplesPerRow);
+                rows.writeRow(row);
+            }
+            rows.finish();
+            reader.copyRest(out);
+            out.flush();
+            completed = true;
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (EOFException e) {
+            throw new FileOperationException(e.getMessage() != null ? e.getMessage() : "PNG 图片不完整");
+        } catch (IOException e) {
+            throw new FileOperationException("PNG 图片流式隐写时出错");
+        } finally {
+            FileUtil.closeQuietly(reader, out);
+            if (!completed && output != null) new File(output).delete(); // 不保留不完整的图片
+        }
+
+        return output;
+    }
+
+    public static String extractFile(String image) {
+        String fileName = extract(image, null);
+
+        return new File(new File(image).getParent(), fileName).getAbsolutePath();
+    }
+
+    /**
+     * 提取隐藏的文件，只顺序读取到信息的末尾所在的行
+     *
+     * @param image PNG 图片路径
+     * @param sink  接收文件内容的输出流，不会关闭它；为 null 时写入图片所在目录下与隐藏的文件同名的文件。
+     *              信息在全部写出之后才能校验，校验失败时输出流中已经写入了内容
+     * @return 隐藏的文件名
+     */
+    public static String extract(String image, OutputStream sink) {
+        PngScanlineReader reader = null;
+
+        try {
+            reader = open(image);
+            return new RowSampleReader(reader).readFile(sink, new File(image).getParentFile());
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } catch (IOException e) {
+            throw new FileOperationException("提取LSB隐写的文件时出错");
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 提取隐藏的字符串
+     *
+     * @param image PNG 图片路径
+     * @return 隐藏的字符串
+     */
+    public static String extractString(String image) {
+        PngScanlineReader reader = null;
+
+        try {
+            reader = open(image);
+            return new RowSampleReader(reader).readString();
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } catch (IOException e) {
+            throw new FileOperationException("提取LSB隐写的字符串时出错");
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 探测图片中是否有按原生样本布局隐藏的信息，只解压头部所在的前几行
+     *
+     * @param image PNG 图片路径
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(String image) {
+        PngScanlineReader reader = null;
+
+        try {
+            reader = open(image);
+            return new RowSampleReader(reader).probe();
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片时出错");
+        } finally {
+            FileUtil.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 打开图片并读取到第一个 IDAT 块，检查是否是支持的格式
+     */
+    private static PngScanlineReader open(String image) throws IOException {
+        PngScanlineReader reader = new PngScanlineReader(new BufferedInputStream(new FileInputStream(image), BUFFER_SIZE));
+        String error = null;
+        if (reader.getColorType() == PngScanlineReader.COLOR_PALETTE) error = "不支持调色板模式的 PNG 图片";
+        else if (reader.getBitDepth() < 8) error = "不支持每个样本少于 8 位的 PNG 图片";
+        else if (reader.isInterlaced()) error = "不支持隔行扫描的 PNG 图片";
+
+        if (error != null) {
+            FileUtil.closeQuietly(reader);
+            throw new FileOperationException(error);
+        }
+
+        return reader;
+    }
+
+    /**
+     * 每次解压图片的一行作为下一段样本
+     */
+    private static class RowSampleReader extends SampleReader {
+
+        private final PngScanlineReader reader;
+        private final byte[] row;
+        private final int step;
+        private final int samplesPerRow;
+
+        RowSampleReader(PngScanlineReader reader) {
+            this.reader = reader;
+            this.row = new byte[reader.getRowLength()];
+            this.step = reader.getBitDepth() / 8;
+            this.samplesPerRow = reader.getWidth() * reader.getChannels();
+        }
+
+        @Override
+        protected boolean nextSamples() throws IOException {
+            if (!reader.readRow(row)) return false;
+
+            setSamples(row, step - 1, step, samplesPerRow);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+
+/**
+ * 按原生样本布局读写内存中的图片，布局见 {@link SampleWriter}<br/>
+ * 每次用 <code>Raster.getPixels</code> 取出一行中各个波段的样本，不经过 ARGB 的颜色转换：灰度图每个像素 1 个样本，
+ * 16 位的图片只修改样本的低字节，调色板图片修改的是颜色的索引。样本的顺序与 PNG 文件中的顺序相同，
+ * 所以与 {@link PngLSB} 隐藏的信息可以互相提取<br/>
+ * 调色板中相邻索引的颜色通常毫不相关，直接改变索引的低位会使像素变成另一种颜色，
+ * 所以调色板图片的索引改为换成低位符合要求、颜色与原来最接近的索引，见 {@link #nearestIndices}；
+ * 调色板中颜色稀疏时仍可能有明显的色差<br/>
+ * 按密钥分散写入时，头部所在的样本仍按顺序读写，之后的样本按 {@link KeyedPermutation} 置换后的位置逐个读写，
+ * 这样的信息只能由本类提取
+ */
+class RasterSamples {
+
+    private static final int SCATTER_SAMPLES = 8192; // 分散读写时每段的样本数
+
+    /**
+     * 只有 INT_ARGB 和 4BYTE_ABGR 的像素能无损地转换为 ARGB 整数，其他类型（灰度、16 位、调色板、没有透明通道的 RGB 等）
+     * 经过 <code>getRGB</code>/<code>setRGB</code> 会改变或丢失最低位，这些图片按原生样本布局隐写
+     *
+     * @param imageType <code>BufferedImage</code> 的类型
+     */
+    static boolean isNative(int imageType) {
+        return imageType != BufferedImage.TYPE_INT_ARGB && imageType != BufferedImage.TYPE_4BYTE_ABGR;
+    }
+
+    static long count(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * image.getRaster().getNumBands();
+    }
+
+    /**
+     * 检查每个样本能否隐藏 depth 位：样本的位数不能少于 depth；调色板的颜色数必须是 2^depth 的倍数，修改后的索引才不会超出调色板
+     */
+    static void checkDepth(BufferedImage image, int depth) {
+        for (int size : image.getSampleModel().getSampleSize()) {
+            if (size < depth) throw new FileOperationException("图片的每个样本只有 " + size + " 位，不能隐藏 " + depth + " 位");
+        }
+
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof IndexColorModel && ((IndexColorModel) colorModel).getMapSize() % (1 << depth) != 0)
+            throw new FileOperationException("调色板的颜色数不是 " + (1 << depth) + " 的倍数，不能隐藏 " + depth + " 位");
+    }
+
+    /**
+     * 逐行写入信息，信息写完之后的行保持不变
+     *
+     * @throws IOException 读取信息时出错，或信息的长度不足
+     */
+    static void embed(BufferedImage image, SampleWriter writer) throws IOException {
+        WritableRaster raster = image.getRaster();
+        int width = image.getWidth();
+        int[] samples = new int[width * raster.getNumBands()];
+        byte[] low = new byte[samples.length];
+        int[] nearest = nearestIndices(image.getColorModel(), writer.getDepth());
+
+        for (int y = 0; y < image.getHeight() && !writer.isComplete(); y++) {
+            raster.getPixels(0, y, width, 1, samples);
+            for (int i = 0; i < samples.length; i++) low[i] = (byte) samples[i];
+            writer.embed(low, 0, 1, low.length);
+            for (int i = 0; i < samples.length; i++) samples[i] = replace(samples[i], low[i], nearest, writer.getDepth());
+            raster.setPixels(0, y, width, 1, samples);
+        }
+    }
+
+    /**
+     * 按密钥分散写入信息
+     *
+     * @param permutation 头部之后的样本的置换，范围见 {@link #permutation}
+     * @throws IOException 读取信息时出错，或信息的长度不足
+     */
+    static void embed(BufferedImage image, SampleWriter writer, KeyedPermutation permutation) throws IOException {
+        WritableRaster raster = image.getRaster();
+        long total = count(image);
+        long[] positions = new long[SCATTER_SAMPLES];
+        byte[] low = new byte[SCATTER_SAMPLES];
+        int[] nearest = nearestIndices(image.getColorModel(), writer.getDepth());
+
+        for (long next = 0; next < total && !writer.isComplete(); ) {
+            int n = nextSegment(raster, permutation, next, total, positions, low);
+            writer.embed(low, 0, 1, n);
+            for (int i = 0; i < n; i++) {
+                int x = x(raster, positions[i]), y = y(raster, positions[i]), band = band(raster, positions[i]);
+                raster.setSample(x, y, band, replace(raster.getSample(x, y, band), low[i], nearest, writer.getDepth()));
+            }
+            next += n;
+        }
+    }
+
+    /**
+     * @param sample  原来的样本
+     * @param low     写入信息后样本的低字节
+     * @param nearest 调色板图片的替换表，见 {@link #nearestIndices}；其他图片为 null
+     * @return 写入信息后的样本：调色板图片换成低 depth 位与 low 相同、颜色最接近的索引，其他图片只替换低字节
+     */
+    private static int replace(int sample, byte low, int[] nearest, int depth) {
+        if (nearest == null || sample >= nearest.length >> depth) return sample & ~0xff | low & 0xff; // 超出调色板的索引只替换低字节
+
+        return nearest[sample << depth | low & (1 << depth) - 1];
+    }
+
+    /**
+     * 为调色板图片计算替换表：表中第 (i << depth | v) 项是低 depth 位等于 v 的索引中，颜色（含透明度）与索引 i 的颜色
+     * 距离最小的一个，v 等于 i 的低 depth 位时就是 i 本身。写入信息只改变索引的低位，提取时读到的位与直接改变低位相同<br/>
+     * 头部所在的样本只写入 1 位，其余的低位保持原样，同样按这张表替换
+     *
+     * @return 替换表，不是调色板图片时为 null
+     */
+    private static int[] nearestIndices(ColorModel colorModel, int depth) {
+        if (!(colorModel instanceof IndexColorModel)) return null;
+
+        IndexColorModel palette = (IndexColorModel) colorModel;
+        int size = palette.getMapSize();
+        int[] argb = new int[size];
+        palette.getRGBs(argb);
+
+        int values = 1 << depth;
+        int[] nearest = new int[size << depth];
+        for (int i = 0; i < size; i++) {
+            for (int v = 0; v < values; v++) {
+                int best = i, bestDistance = Integer.MAX_VALUE;
+                if ((i & values - 1) != v) {
+                    for (int j = v; j < size; j += values) {
+                        int distance = distance(argb[i], argb[j]);
+                        if (distance < bestDistance) {
+                            best = j;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+                nearest[i << depth | v] = best;
+            }
+        }
+
+        return nearest;
+    }
+
+    /**
+     * @return 两个 ARGB 颜色各分量之差的平方和
+     */
+    private static int distance(int a, int b) {
+        int sum = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int d = (a >>> shift & 0xff) - (b >>> shift & 0xff);
+            sum += d * d;
+        }
+
+        return sum;
+    }
+
+    /**
+     * @return 按密钥分散写入时头部之后的样本的置换
+     */
+    static KeyedPermutation permutation(BufferedImage image, String key) {
+        return new KeyedPermutation(key, SampleWriter.HEADER_SAMPLES, Math.max(count(image) - SampleWriter.HEADER_SAMPLES, 0));
+    }
+
+    /**
+     * @return 逐行读取图片样本的输入流
+     */
+    static SampleReader reader(final BufferedImage image) {
+        final Raster raster = image.getRaster();
+        final int width = image.getWidth();
+
+        return new SampleReader() {
+            private final int[] samples = new int[width * raster.getNumBands()];
+            private final byte[] low = new byte[samples.length];
+            private int y;
+
+            @Override
+            protected boolean nextSamples() {
+                if (y == image.getHeight()) return false;
+
+                raster.getPixels(0, y++, width, 1, samples);
+                for (int i = 0; i < samples.length; i++) low[i] = (byte) samples[i];
+                setSamples(low, 0, 1, low.length);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * @param permutation 头部之后的样本的置换，范围见 {@link #permutation}
+     * @return 读取按密钥分散写入的信息的输入流，先按顺序提供头部所在的样本，再按置换后的位置分段提供之后的样本
+     */
+    static SampleReader reader(BufferedImage image, final KeyedPermutation permutation) {
+        final Raster raster = image.getRaster();
+        final long total = count(image);
+
+        return new SampleReader() {
+            private final long[] positions = new long[SCATTER_SAMPLES];
+            private final byte[] low = new byte[SCATTER_SAMPLES];
+            private long next;
+
+            @Override
+            protected boolean nextSamples() {
+                if (next == total) return false;
+
+                int n = nextSegment(raster, permutation, next, total, positions, low);
+                setSamples(low, 0, 1, n);
+                next += n;
+                return true;
+            }
+
+            @Override
+            protected boolean isScattered() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 取出从 next 开始的一段样本的低字节：头部所在的样本单独成段，之后的样本按置换后的位置读取
+     *
+     * @return 这一段的样本数
+     */
+    private static int nextSegment(Raster raster, KeyedPermutation permutation, long next, long total, long[] positions, byte[] low) {
+        int n = (int) Math.min(next < SampleWriter.HEADER_SAMPLES ? SampleWriter.HEADER_SAMPLES - next : positions.length, total - next);
+        for (int i = 0; i < n; i++) {
+            long sample = next + i;
+            positions[i] = sample < SampleWriter.HEADER_SAMPLES ? sample : permutation.map(sample);
+            low[i] = (byte) raster.getSample(x(raster, positions[i]), y(raster, positions[i]), band(raster, positions[i]));
+        }
+
+        return n;
+    }
+
+    private static int x(Raster raster, long sample) {
+        return (int) (sample / raster.getNumBands() % raster.getWidth());
+    }
+
+    private static int y(Raster raster, long sample) {
+        return (int) (sample / raster.getNumBands() / raster.getWidth());
+    }
+
+    private static int band(Raster raster, long sample) {
+        return (int) (sample % raster.getNumBands());
+    }
+}
@@ -0,0 +1,234 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.CompressUtil;
+import com.qin.sistego.util.FileUtil;
+
+import java.io.*;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 按原生样本布局读取隐藏信息的输入流，布局见 {@link SampleWriter}<br/>
+ * 先以每个样本 1 位读取 {@link LSBHeader#LENGTH} 个字节的头部，再按头部中记录的位数读取信息。
+ * 子类在 {@link #nextSamples} 中按顺序提供样本，例如每次解码图片的一行
+ */
+abstract class SampleReader extends InputStream {
+
+    private byte[] data;
+    private int position;
+    private int step;
+    private int remaining; // 当前这段中还没有读取的样本数
+
+    private long sample; // 下一个样本的序号
+    private int depth = 1;
+    private int bits;
+    private int bitCount;
+
+    /**
+     * 提供接下来的一段样本，调用 {@link #setSamples}
+     *
+     * @return 没有更多样本时返回 false
+     * @throws IOException 读取样本时出错
+     */
+    protected abstract boolean nextSamples() throws IOException;
+
+    /**
+     * 能否提取按密钥分散写入的信息。只有能随机访问样本、并按密钥置换后的顺序提供头部之后的样本的子类才能提取
+     */
+    protected boolean isScattered() {
+        return false;
+    }
+
+    /**
+     * @param data  样本所在的数组，读完这段样本之前不能修改
+     * @param off   第一个样本（16 位的样本为其低字节）的位置
+     * @param step  相邻样本之间的距离
+     * @param count 样本数
+     */
+    protected void setSamples(byte[] data, int off, int step, int count) {
+        this.data = data;
+        this.position = off;
+        this.step = step;
+        this.remaining = count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (bitCount < 8) {
+            if (remaining == 0 && !nextSamples()) return -1;
+            if (remaining == 0) continue;
+
+            int need = sample < SampleWriter.HEADER_SAMPLES ? 1 : depth;
+            bits = bits << need | data[position] & (1 << need) - 1;
+            bitCount += need;
+            position += step;
+            remaining--;
+            sample++;
+        }
+
+        bitCount -= 8;
+        return bits >>> bitCount & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        int n = 0;
+        while (n < len) {
+            int next = read();
+            if (next == -1) break;
+            b[off + n++] = (byte) next;
+        }
+
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * 读取头部，之后的样本按头部中记录的位数读取
+     *
+     * @return 头部，没有按原生样本布局隐藏信息时返回 null
+     * @throws IOException 读取样本时出错
+     */
+    LSBHeader readHeader() throws IOException {
+        byte[] bytes = new byte[LSBHeader.LENGTH];
+        for (int n = 0; n < bytes.length; ) {
+            int read = read(bytes, n, bytes.length - n);
+            if (read == -1) return null;
+            n += read;
+        }
+
+        LSBHeader header = LSBHeader.parse(bytes);
+        if (header == null || header.layout != LSBHeader.LAYOUT_SAMPLES) return null;
+
+        depth = header.depth;
+        return header;
+    }
+
+    /**
+     * 只读取头部，探测是否有隐藏信息
+     *
+     * @return 探测结果，校验和在信息之后，所以总是记录了校验和
+     * @throws IOException 读取样本时出错
+     */
+    PayloadInfo probe() throws IOException {
+        LSBHeader header = readHeader();
+        if (header == null) return PayloadInfo.NONE;
+
+        PayloadInfo.Type type = PayloadInfo.typeOf(header.mode, LSBHeader.MODE_FILE, LSBHeader.MODE_STRING);
+        return new PayloadInfo(true, header.version, type, header.length, header.depth, true);
+    }
+
+    /**
+     * 读取隐藏的文件并校验
+     *
+     * @param sink 接收文件内容的输出流，不会关闭它；为 null 时在 dir 下创建与隐藏的文件同名的文件，校验失败时删除它
+     * @param dir  sink 为 null 时写入文件的目录
+     * @return 隐藏的文件名
+     * @throws IOException 读取样本或写入时出错
+     */
+    String readFile(OutputStream sink, File dir) throws IOException {
+        File output = null;
+        BufferedOutputStream bos = null;
+        boolean completed = false;
+
+        try {
+            LSBHeader header = readPayloadHeader(LSBHeader.MODE_FILE, "图片中隐藏的不是文件");
+            CheckedInputStream payload = new CheckedInputStream(FileUtil.newLimitedInputStream(this, header.length), new CRC32C());
+            DataInputStream dis = new DataInputStream(payload);
+
+            byte[] fileNameBytes = new byte[readLength(dis, header.length - 8)];
+            dis.readFully(fileNameBytes);
+            String fileName = new String(fileNameBytes);
+
+            if (sink == null) {
+                output = new File(dir, fileName);
+                bos = new BufferedOutputStream(new FileOutputStream(output));
+                sink = bos;
+            }
+            copyContent(dis, header.length - 4 - fileNameBytes.length, sink);
+            verify(payload);
+            sink.flush();
+            completed = true;
+
+            return fileName;
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } finally {
+            FileUtil.closeQuietly(bos);
+            if (!completed && output != null) output.delete(); // 不保留不完整或已损坏的文件
+        }
+    }
+
+    /**
+     * 读取隐藏的字符串并校验
+     *
+     * @return 隐藏的字符串
+     * @throws IOException 读取样本时出错
+     */
+    String readString() throws IOException {
+        try {
+            LSBHeader header = readPayloadHeader(LSBHeader.MODE_STRING, "图片中隐藏的不是字符串");
+            CheckedInputStream payload = new CheckedInputStream(FileUtil.newLimitedInputStream(this, header.length), new CRC32C());
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            copyContent(new DataInputStream(payload), header.length, baos);
+            verify(payload);
+
+            return baos.toString();
+        } catch (EOFException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        }
+    }
+
+    private LSBHeader readPayloadHeader(byte mode, String message) throws IOException {
+        LSBHeader header = readHeader();
+        if (header == null) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        if (header.scattered && !isScattered()) throw new FileOperationException("图片中的信息按密钥分散写入，需要由 LSB 指定密钥提取");
+        if (header.mode != mode) throw new FileOperationException(message);
+
+        return header;
+    }
+
+    /**
+     * 读取内容的长度字段，并将内容写入输出流。长度字段的最高位表示内容经过压缩，此时其余的位是解压后的长度
+     *
+     * @param max 从长度字段开始的信息的字节数
+     */
+    private static void copyContent(DataInputStream dis, long max, OutputStream sink) throws IOException {
+        int length = dis.readInt();
+        if ((length & CompressUtil.COMPRESSED_FLAG) == 0) {
+            if (length > max - 4) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+            FileUtil.copyStream(dis, sink, length);
+            return;
+        }
+
+        InputStream inflater = CompressUtil.newInflaterStream(dis);
+        try {
+            FileUtil.copyStream(inflater, sink, length & ~CompressUtil.COMPRESSED_FLAG);
+        } catch (ZipException e) {
+            throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+        } finally {
+            FileUtil.closeQuietly(inflater);
+        }
+    }
+
+    /**
+     * 读完剩余的信息，再读取信息之后的校验和并比较
+     */
+    private void verify(CheckedInputStream payload) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (payload.read(buffer, 0, buffer.length) != -1) ;
+
+        long checksum = new DataInputStream(this).readInt() & 0xffffffffL;
+        if (checksum != payload.getChecksum().getValue()) throw new FileOperationException("隐藏的信息已损坏，校验和不一致");
+    }
+
+    private static int readLength(DataInputStream dis, long max) throws IOException {
+        int length = dis.readInt();
+        if (length < 0 || length > max) throw new FileOperationException("图片中没有隐藏信息或信息已损坏");
+
+        return length;
+    }
+}
@@ -0,0 +1,173 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.OutOfSizeException;
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.CompressUtil;
+
+import java.io.*;
+
+/**
+ * 按原生样本布局写入隐藏信息<br/>
+ * 原生样本布局：图片的所有样本按行优先的顺序排列，每个像素内按颜色分量在文件中的顺序（如 PNG 的 R、G、B、A，灰度图只有一个样本），
+ * 开头 {@link #HEADER_SAMPLES} 个样本每个写入 LSB 头部的 1 位，之后每个样本写入信息的 depth 位，信息之后是它的 CRC-32C（4 字节）。
+ * 各位按从高到低的顺序写入样本的最低 depth 位中，16 位的样本只修改低字节。校验和写在信息之后，
+ * 所以头部可以在信息之前写入，整个过程只需顺序访问一次样本
+ */
+class SampleWriter {
+
+    static final int HEADER_SAMPLES = LSBHeader.LENGTH * 8;
+
+    private final byte[] header;
+    private final InputStream payload;
+    private final int depth;
+    private final CRC32C checksum = new CRC32C();
+    private long unread; // 信息中还没有读取的字节数
+
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    private int trailer; // 已经写入的校验和的字节数
+
+    private long sample; // 下一个样本的序号
+    private int bits;
+    private int bitCount;
+    private boolean complete;
+
+    /**
+     * @param header  原生样本布局的头部
+     * @param payload 需要隐藏的信息，读取 length 个字节，不会关闭它
+     * @param length  信息的字节数
+     */
+    SampleWriter(LSBHeader header, InputStream payload, long length) {
+        this.header = header.toBytes();
+        this.payload = payload;
+        this.depth = header.depth;
+        this.unread = length;
+    }
+
+    /**
+     * 检查参数和容量，创建写入文件信息或字符串的写入器
+     *
+     * @param samples     图片的样本数
+     * @param headerBytes 信息开头的长度、文件名等字段
+     * @param payload     需要隐藏的内容，读取 length 个字节，不会关闭它
+     * @param length      内容的字节数
+     * @param options     隐写参数（只使用其中的深度），为 null 时使用默认参数；设置了压缩级别或密钥时抛出 IllegalArgumentException
+     * @param mode        隐藏的是文件还是字符串
+     * @throws OutOfSizeException 内容超出了图片的容量
+     */
+    static SampleWriter create(long samples, byte[] headerBytes, InputStream payload, long length, LSBOptions options, byte mode)
+            throws OutOfSizeException {
+        if (options == null) options = new LSBOptions();
+        // 头部在信息之前写入，需要预先知道信息的长度
+        if (options.getCompressionLevel() != CompressUtil.NO_COMPRESSION) throw new IllegalArgumentException("按原生样本布局隐写时不能压缩信息");
+        // 分散写入需要随机访问样本，逐行流式处理时无法做到
+        if (options.getKey() != null) throw new IllegalArgumentException("流式隐写不支持按密钥分散写入，请使用 LSB");
+
+        return create(samples, headerBytes, payload, length, options.getDepth(), mode);
+    }
+
+    /**
+     * 检查容量，创建写入文件信息或字符串的写入器，内容已经压缩时由调用者设置长度字段中的标志位
+     *
+     * @param depth 每个样本隐藏的位数
+     */
+    static SampleWriter create(long samples, byte[] headerBytes, InputStream payload, long length, int depth, byte mode)
+            throws OutOfSizeException {
+        return create(samples, headerBytes, payload, length, depth, mode, false);
+    }
+
+    /**
+     * 检查容量，创建写入文件信息或字符串的写入器
+     *
+     * @param scattered 调用者是否按密钥置换后的顺序提供头部之后的样本，记录在头部中
+     */
+    static SampleWriter create(long samples, byte[] headerBytes, InputStream payload, long length, int depth, byte mode,
+                               boolean scattered) throws OutOfSizeException {
+        LSB.checkCapacity(capacity(samples, depth) - headerBytes.length, length, mode);
+
+        long total = headerBytes.length + length;
+        return new SampleWriter(LSBHeader.forSamples(depth, mode, total, scattered),
+                new SequenceInputStream(new ByteArrayInputStream(headerBytes), payload), total);
+    }
+
+    /**
+     * 能够隐藏的信息的字节数（不包括头部和校验和）
+     *
+     * @param samples 图片的样本数
+     * @param depth   每个样本隐藏的位数
+     */
+    static long capacity(long samples, int depth) {
+        return Math.max((samples - HEADER_SAMPLES) * depth / 8 - 4, 0);
+    }
+
+    /**
+     * 向接下来的 count 个样本中写入信息，信息写完之后的样本保持不变
+     *
+     * @param data  样本所在的数组
+     * @param off   第一个样本（16 位的样本为其低字节）的位置
+     * @param step  相邻样本之间的距离
+     * @param count 样本数
+     * @throws IOException 读取信息时出错，或信息的长度不足
+     */
+    void embed(byte[] data, int off, int step, int count) throws IOException {
+        for (int i = 0, p = off; i < count && !complete; i++, p += step) {
+            int need = sample < HEADER_SAMPLES ? 1 : depth;
+            while (bitCount < need) {
+                int next = nextByte();
+                if (next == -1) break;
+                bits = bits << 8 | next;
+                bitCount += 8;
+            }
+            if (bitCount == 0) {
+                complete = true;
+                break;
+            }
+
+            int n = Math.min(need, bitCount);
+            int shift = need - n; // 最后不足 depth 位时写在高位
+            int mask = ((1 << n) - 1) << shift;
+            bitCount -= n;
+            data[p] = (byte) (data[p] & ~mask | (bits >>> bitCount & (1 << n) - 1) << shift);
+            sample++;
+        }
+    }
+
+    /**
+     * @return 头部之后每个样本写入的位数
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return 头部、信息和校验和是否已经全部写入
+     */
+    boolean isComplete() {
+        if (!complete && bitCount == 0 && trailer == 4) complete = true;
+
+        return complete;
+    }
+
+    /**
+     * 依次返回头部、信息和校验和的下一个字节，全部返回后返回 -1
+     */
+    private int nextByte() throws IOException {
+        if (sample < HEADER_SAMPLES) return header[(int) (sample / 8)] & 0xff;
+        if (position < limit) return buffer[position++] & 0xff;
+
+        if (unread > 0) {
+            int n = payload.read(buffer, 0, (int) Math.min(buffer.length, unread));
+            if (n == -1) throw new EOFException("需要隐藏的内容长度不足");
+            checksum.update(buffer, 0, n);
+            unread -= n;
+            position = 1;
+            limit = n;
+
+            return buffer[0] & 0xff;
+        }
+        if (trailer < 4) return (int) (checksum.getValue() >>> 8 * (3 - trailer++)) & 0xff;
+
+        return -1;
+    }
+}
@@ -0,0 +1,66 @@
+package com.qin.sistego.core;
+
+/**
+ * 一次隐写或提取操作中一个阶段的统计
+ */
+public class StageRecord {
+
+    private final StegoMetrics.Operation operation;
+    private final StegoMetrics.Stage stage;
+    private final String image;
+    private final long durationNanos;
+    private final long bytes;
+    private final long allocatedBytes;
+
+    StageRecord(StegoMetrics.Operation operation, StegoMetrics.Stage stage, String image, long durationNanos, long bytes,
+                long allocatedBytes) {
+        this.operation = operation;
+        this.stage = stage;
+        this.image = image;
+        this.durationNanos = durationNanos;
+        this.bytes = bytes;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public StegoMetrics.Operation getOperation() {
+        return operation;
+    }
+
+    public StegoMetrics.Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * @return 图片路径，在内存中的图片上操作时为 null
+     */
+    public String getImage() {
+        return image;
+    }
+
+    /**
+     * @return 这个阶段的耗时（纳秒）
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return 这个阶段处理的字节数，含义见 {@link StegoMetrics.Stage}
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return 执行操作的线程在这个阶段中分配的内存字节数，线程池中并行执行的部分不计算在内；JVM 不支持统计时为 -1
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + stage + "：" + durationNanos / 1000000.0 + " ms，" + bytes + " 字节"
+                + (allocatedBytes >= 0 ? "，分配 " + allocatedBytes + " 字节" : "") + (image != null ? "，" + image : "");
+    }
+}
@@ -0,0 +1,177 @@
+package com.qin.sistego.core;
+
+import javax.imageio.stream.FileImageOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 统计一次操作中各阶段的耗时：每次 {@link #mark} 把从上一次 mark 到现在的时间和分配的内存计入一个阶段，
+ * 同一阶段多次 mark 时累加，操作完成时由 {@link #finish} 通知监听器<br/>
+ * 嵌套在其他阶段中的写入时间（例如编码图片的同时写入文件）由 {@link #track} 返回的输出流单独计入，并从外层的阶段中扣除。
+ * 只在执行操作的线程中使用，不是线程安全的
+ */
+class StageTimer {
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationBean();
+    private static final StegoMetrics.Stage[] STAGES = StegoMetrics.Stage.values();
+
+    static final StageTimer NONE = new StageTimer(null, null, null);
+
+    private final StegoMetrics.Operation operation;
+    private final String image;
+    private final StegoListener[] listeners;
+
+    private final long[] nanos = new long[STAGES.length];
+    private final long[] bytes = new long[STAGES.length];
+    private final long[] allocated = new long[STAGES.length];
+    private final boolean[] reached = new boolean[STAGES.length];
+
+    private long checkpoint;
+    private long allocatedCheckpoint;
+    private long nested; // 上一次 mark 之后已经单独计入其他阶段的时间
+
+    StageTimer(StegoMetrics.Operation operation, String image, StegoListener[] listeners) {
+        this.operation = operation;
+        this.image = image;
+        this.listeners = listeners;
+        if (listeners != null) {
+            checkpoint = System.nanoTime();
+            allocatedCheckpoint = allocatedBytes();
+        }
+    }
+
+    boolean isEnabled() {
+        return listeners != null;
+    }
+
+    /**
+     * 结束一个阶段
+     *
+     * @param stage 刚刚结束的阶段
+     * @param count 这一段处理的字节数，未知时为 -1
+     */
+    void mark(StegoMetrics.Stage stage, long count) {
+        if (listeners == null) return;
+
+        long now = System.nanoTime();
+        long allocatedNow = allocatedBytes();
+        int i = stage.ordinal();
+        nanos[i] += now - checkpoint - nested;
+        allocated[i] += allocatedNow - allocatedCheckpoint;
+        add(i, count);
+
+        checkpoint = now;
+        allocatedCheckpoint = allocatedNow;
+        nested = 0;
+    }
+
+    /**
+     * 操作正常完成，依次通知各阶段的统计
+     */
+    void finish() {
+        if (listeners == null) return;
+
+        boolean measured = THREADS != null;
+        for (int i = 0; i < STAGES.length; i++) {
+            if (!reached[i]) continue;
+
+            StageRecord record = new StageRecord(operation, STAGES[i], image, nanos[i], bytes[i], measured ? allocated[i] : -1);
+            for (StegoListener listener : listeners) {
+                try {
+                    listener.stageCompleted(record);
+                } catch (RuntimeException ignored) {
+                    // 监听器的异常不影响已经完成的操作
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 把写入的时间和字节数计入指定阶段的输出流；没有统计时直接返回 out
+     */
+    OutputStream track(OutputStream out, final StegoMetrics.Stage stage) {
+        if (listeners == null) return out;
+
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                long start = System.nanoTime();
+                out.write(b);
+                written(stage, start, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                out.write(b, off, len);
+                written(stage, start, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                long start = System.nanoTime();
+                super.close();
+                written(stage, start, 0);
+            }
+        };
+    }
+
+    /**
+     * @return 供 <code>ImageIO</code> 写入文件的输出流，写入的时间和字节数计入指定阶段；没有统计时与 <code>ImageIO</code> 自己创建的相同
+     */
+    FileImageOutputStream track(RandomAccessFile file, final StegoMetrics.Stage stage) throws IOException {
+        if (listeners == null) return new FileImageOutputStream(file);
+
+        return new FileImageOutputStream(file) {
+            @Override
+            public void write(int b) throws IOException {
+                long start = System.nanoTime();
+                super.write(b);
+                written(stage, start, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                long start = System.nanoTime();
+                super.write(b, off, len);
+                written(stage, start, len);
+            }
+        };
+    }
+
+    private void written(StegoMetrics.Stage stage, long start, long count) {
+        long elapsed = System.nanoTime() - start;
+        nanos[stage.ordinal()] += elapsed;
+        nested += elapsed;
+        add(stage.ordinal(), count);
+    }
+
+    private void add(int stage, long count) {
+        if (count < 0 || bytes[stage] < 0) bytes[stage] = -1;
+        else bytes[stage] += count;
+        reached[stage] = true;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return 能够统计线程分配的内存的 MXBean，JVM 不支持或关闭了统计时返回 null
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+        } catch (LinkageError e) {
+            return null; // 没有 com.sun.management 的 JVM
+        }
+    }
+}
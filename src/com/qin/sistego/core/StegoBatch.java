@@ -0,0 +1,336 @@
+package com.qin.sistego.core;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 批量执行隐写任务<br/>
+ * LSB 隐写的耗时主要在图片的解码、编码上，在计算线程池中执行；文件末尾隐写只是文件复制，在 I/O 线程池中执行，
+ * JDK 21 及以上默认使用虚拟线程。每个任务的输出文件名互不相同，即使它们在同一秒内对同一图片完成隐写
+ *
+ * <pre>
+ * StegoBatch.Report report = new StegoBatch()
+ *         .add(StegoBatch.Task.file("a.png", "secret.txt", StegoBatch.Mode.LSB))
+ *         .add(StegoBatch.Task.string("b.jpg", "message", StegoBatch.Mode.TAIL))
+ *         .run();
+ * </pre>
+ */
+public class StegoBatch {
+
+    public enum Mode {
+        LSB, TAIL
+    }
+
+    private final List<Task> tasks = new ArrayList<Task>();
+    private int cpuThreads = Runtime.getRuntime().availableProcessors();
+    private int ioThreads = 16;
+    private boolean virtualThreads = true;
+
+    public StegoBatch add(Task task) {
+        tasks.add(task);
+
+        return this;
+    }
+
+    public StegoBatch addAll(List<Task> tasks) {
+        this.tasks.addAll(tasks);
+
+        return this;
+    }
+
+    /**
+     * @param cpuThreads 执行 LSB 隐写的线程数，默认为 CPU 核数
+     * @return 当前对象
+     */
+    public StegoBatch setCpuThreads(int cpuThreads) {
+        if (cpuThreads < 1) throw new IllegalArgumentException("线程数应大于 0");
+        this.cpuThreads = cpuThreads;
+
+        return this;
+    }
+
+    /**
+     * @param ioThreads 不能使用虚拟线程时，执行文件末尾隐写的线程数，默认为 16
+     * @return 当前对象
+     */
+    public StegoBatch setIoThreads(int ioThreads) {
+        if (ioThreads < 1) throw new IllegalArgumentException("线程数应大于 0");
+        this.ioThreads = ioThreads;
+
+        return this;
+    }
+
+    /**
+     * @param virtualThreads 运行在 JDK 21 及以上时，是否用虚拟线程执行文件末尾隐写，默认为 true
+     * @return 当前对象
+     */
+    public StegoBatch setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+
+        return this;
+    }
+
+    /**
+     * 执行所有任务，等待全部完成后返回。单个任务失败不影响其他任务，失败的原因记录在对应的结果中
+     *
+     * @return 执行报告，其中结果的顺序与添加任务的顺序相同
+     */
+    public Report run() {
+        ExecutorService cpuExecutor = Executors.newFixedThreadPool(cpuThreads);
+        ExecutorService ioExecutor = newIoExecutor();
+        List<Future<Result>> futures = new ArrayList<Future<Result>>(tasks.size());
+        long start = System.nanoTime();
+
+        try {
+            for (final Task task : tasks) {
+                ExecutorService executor = task.mode == Mode.LSB ? cpuExecutor : ioExecutor;
+                futures.add(executor.submit(task::execute));
+            }
+
+            List<Result> results = new ArrayList<Result>(futures.size());
+            for (Future<Result> future : futures) {
+                results.add(getUninterruptibly(future));
+            }
+
+            return new Report(results, System.nanoTime() - start);
+        } finally {
+            cpuExecutor.shutdown();
+            ioExecutor.shutdown();
+        }
+    }
+
+    private ExecutorService newIoExecutor() {
+        if (virtualThreads) {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // JDK 21 以下没有虚拟线程，使用普通的线程池
+            }
+        }
+
+        return Executors.newFixedThreadPool(ioThreads);
+    }
+
+    private static Result getUninterruptibly(Future<Result> future) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause()); // execute 已经捕获了所有异常，不会发生
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一个隐写任务：把文件或字符串以指定的方式隐藏到图片中
+     */
+    public static class Task {
+
+        private final String image;
+        private final String file;
+        private final String message;
+        private final Mode mode;
+        private final LSBOptions options;
+
+        private Task(String image, String file, String message, Mode mode, LSBOptions options) {
+            this.image = image;
+            this.file = file;
+            this.message = message;
+            this.mode = mode;
+            this.options = options;
+        }
+
+        public static Task file(String image, String file, Mode mode) {
+            return new Task(image, file, null, mode, mode == Mode.LSB ? new LSBOptions() : null);
+        }
+
+        /**
+         * @param options LSB 隐写的参数，为 null 时使用旧格式
+         */
+        public static Task file(String image, String file, LSBOptions options) {
+            return new Task(image, file, null, Mode.LSB, options);
+        }
+
+        public static Task string(String image, String message, Mode mode) {
+            return new Task(image, null, message, mode, mode == Mode.LSB ? new LSBOptions() : null);
+        }
+
+        /**
+         * @param options LSB 隐写的参数，为 null 时使用旧格式
+         */
+        public static Task string(String image, String message, LSBOptions options) {
+            return new Task(image, null, message, Mode.LSB, options);
+        }
+
+        public String getImage() {
+            return image;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        /**
+         * @return 隐藏的信息的字节数
+         */
+        long payloadLength() {
+            return file != null ? new File(file).length() : message.getBytes().length;
+        }
+
+        private Result execute() {
+            long start = System.nanoTime();
+
+            try {
+                String output;
+                if (mode == Mode.LSB) {
+                    output = file != null ? LSB.hideFile(image, file, options) : LSB.hideString(image, message, options);
+                } else {
+                    output = file != null ? Tail.hideFile(image, file) : Tail.hideString(image, message);
+                }
+                return new Result(this, output, null, payloadLength(), System.nanoTime() - start);
+            } catch (Exception e) {
+                return new Result(this, null, e, 0, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * 单个任务的结果
+     */
+    public static class Result {
+
+        private final Task task;
+        private final String output;
+        private final Exception error;
+        private final long bytes;
+        private final long nanos;
+
+        Result(Task task, String output, Exception error, long bytes, long nanos) {
+            this.task = task;
+            this.output = output;
+            this.error = error;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public Task getTask() {
+            return task;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @return 输出的图片路径，任务失败时为 null
+         */
+        public String getOutput() {
+            return output;
+        }
+
+        /**
+         * @return 任务失败的原因，成功时为 null
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * @return 隐藏的信息的字节数，任务失败时为 0
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * 整个批次的执行报告
+     */
+    public static class Report {
+
+        private final List<Result> results;
+        private final long nanos;
+
+        Report(List<Result> results, long nanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.nanos = nanos;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public List<Result> getFailures() {
+            List<Result> failures = new ArrayList<Result>();
+            for (Result result : results) {
+                if (!result.isSuccess()) failures.add(result);
+            }
+
+            return failures;
+        }
+
+        public int getSuccessCount() {
+            return results.size() - getFailures().size();
+        }
+
+        /**
+         * @return 从开始执行到全部完成经过的时间（纳秒）
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return 成功隐藏的信息的总字节数
+         */
+        public long getTotalBytes() {
+            long total = 0;
+            for (Result result : results) {
+                total += result.getBytes();
+            }
+
+            return total;
+        }
+
+        /**
+         * @return 每秒完成的任务数（包括失败的任务）
+         */
+        public double getTasksPerSecond() {
+            return nanos == 0 ? 0 : results.size() * 1e9 / nanos;
+        }
+
+        /**
+         * @return 每秒隐藏的信息的字节数
+         */
+        public double getBytesPerSecond() {
+            return nanos == 0 ? 0 : getTotalBytes() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d 个任务，成功 %d 个，失败 %d 个，耗时 %.3f 秒，%.1f 个任务/秒，%.2f MB/秒",
+                    results.size(), getSuccessCount(), results.size() - getSuccessCount(),
+                    nanos / 1e9, getTasksPerSecond(), getBytesPerSecond() / (1 << 20));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.qin.sistego.core;
+
+/**
+ * 接收隐写和提取各阶段的耗时、处理的字节数和分配的内存，由 {@link StegoMetrics#addListener} 注册<br/>
+ * 一次操作正常完成时，在执行它的线程中依次为每个经过的阶段调用一次，应尽快返回；操作抛出异常时不会调用
+ */
+public interface StegoListener {
+
+    /**
+     * @param record 一个阶段的统计
+     */
+    void stageCompleted(StageRecord record);
+}
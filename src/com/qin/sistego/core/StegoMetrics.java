@@ -0,0 +1,119 @@
+package com.qin.sistego.core;
+
+/**
+ * 隐写和提取各阶段的统计，供定位耗时使用，例如一次 LSB 隐写的时间花在解码、写入信息还是编码上<br/>
+ * 统计 {@link LSB}（包括在内存中的图片上隐写）和 {@link Tail} 以文件路径进行的隐写和提取。
+ * 没有注册监听器时不做任何统计，每次操作只多一次判断<br/>
+ * 运行在带有 JDK Flight Recorder 的 JVM 上时，可以由 {@link #enableFlightRecorder} 或启动参数
+ * <code>-Dsistego.jfr=true</code> 把每个阶段记录为 <code>com.qin.sistego.Stage</code> 事件
+ */
+public class StegoMetrics {
+
+    public enum Operation {
+        LSB_HIDE, LSB_EXTRACT, TAIL_HIDE, TAIL_EXTRACT
+    }
+
+    /**
+     * 操作的阶段，括号中为 {@link StageRecord#getBytes} 的含义
+     */
+    public enum Stage {
+        /**
+         * 解码图片（解码出的像素字节数）；文件末尾隐写为读取尾部结构、定位信息（信息的字节数）
+         */
+        DECODE,
+        /**
+         * 生成信息头部、判断是否压缩，LSB 隐写还包括像素与列优先数组之间的转换（转换的像素字节数）
+         */
+        PACK,
+        /**
+         * 把信息写入像素的最低位或文件末尾，包括读取和压缩信息（信息的字节数）
+         */
+        EMBED,
+        /**
+         * 编码图片，不包括写入文件的时间（像素字节数）；文件末尾隐写为计算校验和并写入尾部结构（信息的字节数）
+         */
+        ENCODE,
+        /**
+         * 写入输出文件（写入的字节数）；文件末尾隐写为复制作为载体的图片
+         */
+        WRITE,
+        /**
+         * 从像素的最低位或文件末尾读出信息并写入输出（信息的字节数）
+         */
+        EXTRACT
+    }
+
+    private static final StegoListener[] NO_LISTENERS = new StegoListener[0];
+
+    private static volatile StegoListener[] listeners = NO_LISTENERS;
+    private static StegoListener flightRecorder;
+
+    static {
+        if (Boolean.getBoolean("sistego.jfr")) enableFlightRecorder();
+    }
+
+    private StegoMetrics() {
+    }
+
+    public static synchronized void addListener(StegoListener listener) {
+        if (listener == null) throw new NullPointerException("listener");
+
+        StegoListener[] updated = new StegoListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, updated, 0, listeners.length);
+        updated[listeners.length] = listener;
+        listeners = updated;
+    }
+
+    public static synchronized void removeListener(StegoListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] != listener) continue;
+
+            StegoListener[] updated = new StegoListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, updated, 0, i);
+            System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+            listeners = updated.length == 0 ? NO_LISTENERS : updated;
+            return;
+        }
+    }
+
+    /**
+     * 把每个阶段记录为 JDK Flight Recorder 事件，录制中启用了 <code>com.qin.sistego.Stage</code> 事件时才会写入
+     *
+     * @return JVM 不支持 Flight Recorder（JDK 11 以下）时返回 false
+     */
+    public static synchronized boolean enableFlightRecorder() {
+        if (flightRecorder != null) return true;
+
+        try {
+            Class.forName("jdk.jfr.Event");
+            flightRecorder = (StegoListener) Class.forName("com.qin.sistego.jfr.FlightRecorderListener").getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            return false; // 没有 Flight Recorder，或者用 JDK 11 以下的版本构建，没有编译记录事件的类
+        } catch (LinkageError e) {
+            return false; // 记录事件的类按 JDK 11 编译，JDK 8 上不能加载
+        }
+        addListener(flightRecorder);
+
+        return true;
+    }
+
+    public static synchronized void disableFlightRecorder() {
+        if (flightRecorder == null) return;
+
+        removeListener(flightRecorder);
+        flightRecorder = null;
+    }
+
+    /**
+     * 开始统计一次操作
+     *
+     * @param image 图片路径，在内存中的图片上操作时为 null
+     * @return 统计各阶段的计时器，没有监听器时返回不做任何事的 {@link StageTimer#NONE}
+     */
+    static StageTimer begin(Operation operation, String image) {
+        StegoListener[] current = listeners;
+        if (current.length == 0) return StageTimer.NONE;
+
+        return new StageTimer(operation, image, current);
+    }
+}
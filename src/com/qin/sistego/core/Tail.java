@@ -1,198 +1,715 @@
 package com.qin.sistego.core;
 
 import com.qin.sistego.exception.FileOperationException;
-import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.BytePattern;
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.CompressUtil;
 import com.qin.sistego.util.FileUtil;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.Date;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 
 public class Tail {
 
-    private static final byte[] JPEG_END = {(byte) 0xff, (byte) 0xd9};
-    private static final byte[] PNG_END = {0x00, 0x00, 0x00, 0x00, 0x49, 0x45, 0x4e, 0x44, (byte) 0xae, 0x42, 0x60, (byte) 0x82};
+    private static final BytePattern JPEG_END = BytePattern.compile(new byte[]{(byte) 0xff, (byte) 0xd9});
+    private static final BytePattern PNG_END = BytePattern.compile(new byte[]{0x00, 0x00, 0x00, 0x00, 0x49, 0x45, 0x4e, 0x44, (byte) 0xae, 0x42, 0x60, (byte) 0x82});
+    private static final BytePattern GIF_END = BytePattern.compile(new byte[]{0x3b});
 
     public static String hideFile(String image, String file) {
-        byte[] fileBytes = FileUtil.file2InfoBytes(file);
-
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yy-MM-dd_HHmmss");
-        String suffix = FileUtil.getSuffix(image);
-        String output = image.substring(0, image.lastIndexOf(".")) +
-                "_" + dateFormat.format(new Date()) +
-                "." + suffix; // 输出的文件名
-
-        if (suffix.toUpperCase().equals("GIF")) fileBytes = Base64.getEncoder().encode(fileBytes);
+        return hideFile(image, file, CompressUtil.NO_COMPRESSION);
+    }
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+    /**
+     * 隐藏文件，文件内容可以压缩后隐藏，提取时根据信息中的标志位自动解压
+     *
+     * @param image            图片路径
+     * @param file             需要隐藏的文件路径
+     * @param compressionLevel Deflate 压缩级别，0 为不压缩；开头的样本无法压缩的文件会自动跳过压缩
+     * @return 输出的图片路径
+     */
+    public static String hideFile(String image, String file, int compressionLevel) {
+        FileInputStream fileIn = null;
 
         try {
-            bis = new BufferedInputStream(new FileInputStream(image));
-            bos = new BufferedOutputStream(new FileOutputStream(output));
+            fileIn = new FileInputStream(file);
 
-            int data = bis.read();
-            while (data != -1) {
-                bos.write(data);
-                data = bis.read();
-            }
-            bos.write(fileBytes);
+            return hide(image, new File(file).getName(), fileIn, fileIn.getChannel().size(), compressionLevel);
         } catch (FileNotFoundException e) {
             throw new FileOperationException("没有找到指定的文件");
         } catch (IOException e) {
             throw new FileOperationException("隐藏文件时出错");
         } finally {
-            if (bis != null) {
-                try {
-                    bis.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-            if (bos != null) {
-                try {
-                    bos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
+            FileUtil.closeQuietly(fileIn);
+        }
+    }
+
+    public static String hide(String image, String fileName, InputStream payload, long length) {
+        return hide(image, fileName, payload, length, CompressUtil.NO_COMPRESSION);
+    }
+
+    /**
+     * 以文件的格式隐藏输入流中的内容，内容边读取边写入输出的图片，不会整个读入内存，提取时与 <code>hideFile</code> 隐藏的文件相同<br/>
+     * 写入的同时计算信息的校验和，写完之后不再读回输出的文件
+     *
+     * @param image            图片路径
+     * @param fileName         提取时使用的文件名
+     * @param payload          需要隐藏的内容，从当前位置读取 length 个字节，不会关闭它
+     * @param length           内容的字节数
+     * @param compressionLevel Deflate 压缩级别，0 为不压缩；开头的样本无法压缩的内容会自动跳过压缩
+     * @return 输出的图片路径
+     */
+    public static String hide(String image, String fileName, InputStream payload, long length, int compressionLevel) {
+        CompressUtil.checkLevel(compressionLevel);
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.TAIL_HIDE, image);
+        byte[] headerBytes = FileUtil.infoHeaderBytes(fileName, length);
+
+        String suffix = FileUtil.getSuffix(image);
+        String output = null; // 输出的文件名
+        boolean completed = false;
+
+        FileInputStream imageIn = null;
+        FileOutputStream out = null;
+
+        try {
+            FileChannel payloadChannel = payload instanceof FileInputStream ? ((FileInputStream) payload).getChannel() : null;
+            boolean compress = false;
+            if (compressionLevel != CompressUtil.NO_COMPRESSION) {
+                // 读取开头的样本判断是否值得压缩，文件通道按位置读取，不改变当前位置
+                int sampleLength = (int) Math.min(length, CompressUtil.SAMPLE_BYTES);
+                byte[] sample;
+                if (payloadChannel != null) {
+                    sample = FileUtil.readFully(payloadChannel, payloadChannel.position(), sampleLength);
+                } else {
+                    sample = FileUtil.readFully(payload, sampleLength);
+                    payload = new SequenceInputStream(new ByteArrayInputStream(sample), payload);
                 }
+                compress = CompressUtil.isCompressible(sample, compressionLevel);
             }
+            if (compress) headerBytes[headerBytes.length - 4] |= (byte) (CompressUtil.COMPRESSED_FLAG >>> 24);
+            timer.mark(StegoMetrics.Stage.PACK, headerBytes.length);
+
+            imageIn = new FileInputStream(image);
+            output = FileUtil.getOutputPath(image); // 图片存在时才占用输出路径
+            out = new FileOutputStream(output);
+
+            FileChannel outChannel = out.getChannel();
+            long offset = copyCover(imageIn.getChannel(), suffix, outChannel);
+            timer.mark(StegoMetrics.Stage.WRITE, offset);
+            // 校验和在写入的同时计算，内容需要经过 Java 堆，不再由 transferTo 直接传输
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(outChannel), 64 * 1024), new CRC32C());
+            checked.write(headerBytes);
+            writeContent(payload, length, checked, compress, compressionLevel);
+            checked.flush();
+
+            long stored = outChannel.position() - offset; // 文件中保存的信息（压缩之后）的字节数
+            timer.mark(StegoMetrics.Stage.EMBED, stored);
+            long checksum = checked.getChecksum().getValue();
+            TailFooter footer = new TailFooter(offset, stored, TailFooter.MODE_FILE, (byte) 0, checksum);
+            FileUtil.writeFully(footer.toBytes(), outChannel);
+            timer.mark(StegoMetrics.Stage.ENCODE, stored);
+            completed = true;
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (EOFException e) {
+            throw new FileOperationException("需要隐藏的内容长度不足");
+        } catch (IOException e) {
+            throw new FileOperationException("隐藏文件时出错");
+        } finally {
+            FileUtil.closeQuietly(imageIn, out);
+            if (!completed && output != null) new File(output).delete(); // 不保留不完整的输出
         }
+        timer.finish();
 
         return output;
     }
 
-    public static String hideString(String image, String message) {
-        byte[] messageBytes = message.getBytes();
+    /**
+     * 将图片复制到输出通道，GIF 只复制到结束标记为止，隐藏的信息紧跟在结束标记之后
+     *
+     * @return 复制的字节数，即信息的起始位置
+     */
+    private static long copyCover(FileChannel image, String suffix, FileChannel out) throws IOException {
+        if (!suffix.toUpperCase().equals("GIF")) return FileUtil.transferFully(image, out);
 
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yy-MM-dd_HHmmss");
-        String suffix = FileUtil.getSuffix(image);
-        String output = image.substring(0, image.lastIndexOf(".")) +
-                "_" + dateFormat.format(new Date()) +
-                "." + suffix; // 输出的文件名
+        long end = getGifEndOffset(map(image));
+        FileUtil.transferFully(image, 0, end, out);
 
-        if (suffix.toUpperCase().equals("GIF")) messageBytes = Base64.getEncoder().encode(messageBytes);
+        return end;
+    }
 
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+    /**
+     * 返回内存中的图片里作为载体的部分，GIF 截止到结束标记，其他格式为整个图片
+     */
+    private static ByteBuffer cover(ByteBuffer image) {
+        ByteBuffer cover = image.slice();
+        if ("GIF".equals(formatOf(cover))) cover.limit(getGifEndOffset(cover));
 
-        try {
-            bis = new BufferedInputStream(new FileInputStream(image));
-            bos = new BufferedOutputStream(new FileOutputStream(output));
+        return cover;
+    }
 
-            int data = bis.read();
-            while (data != -1) {
-                bos.write(data);
-                data = bis.read();
-            }
-            bos.write(messageBytes);
+    private static void writeContent(InputStream payload, long length, OutputStream out, boolean compress, int level) throws IOException {
+        if (!compress) {
+            FileUtil.copyStream(payload, out, length);
+            return;
+        }
+
+        OutputStream deflater = CompressUtil.newDeflaterStream(out, level);
+        FileUtil.copyStream(payload, deflater, length);
+        deflater.close();
+    }
+
+    public static String hideString(String image, String message) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.TAIL_HIDE, image);
+        byte[] messageBytes = message.getBytes();
+        String output = null; // 输出的文件名
+        boolean completed = false;
+
+        FileInputStream imageIn = null;
+        FileOutputStream out = null;
+
+        try {
+            imageIn = new FileInputStream(image);
+            output = FileUtil.getOutputPath(image); // 输入文件存在时才占用输出路径
+            out = new FileOutputStream(output);
+
+            FileChannel outChannel = out.getChannel();
+            long offset = copyCover(imageIn.getChannel(), FileUtil.getSuffix(image), outChannel);
+            timer.mark(StegoMetrics.Stage.WRITE, offset);
+            FileUtil.writeFully(messageBytes, outChannel);
+            timer.mark(StegoMetrics.Stage.EMBED, messageBytes.length);
+
+            CRC32C checksum = new CRC32C();
+            checksum.update(messageBytes);
+            TailFooter footer = new TailFooter(offset, messageBytes.length, TailFooter.MODE_STRING, (byte) 0, checksum.getValue());
+            FileUtil.writeFully(footer.toBytes(), outChannel);
+            timer.mark(StegoMetrics.Stage.ENCODE, messageBytes.length);
+            completed = true;
         } catch (FileNotFoundException e) {
             throw new FileOperationException("没有找到指定的文件");
         } catch (IOException e) {
             throw new FileOperationException("隐藏字符串时出错");
         } finally {
-            if (bis != null) {
+            FileUtil.closeQuietly(imageIn, out);
+            if (!completed && output != null) new File(output).delete(); // 不保留不完整的输出
+        }
+        timer.finish();
+
+        return output;
+    }
+
+    public static byte[] hideFile(ByteBuffer image, String fileName, byte[] content) {
+        return hideFile(image, fileName, content, CompressUtil.NO_COMPRESSION);
+    }
+
+    /**
+     * 在内存中隐藏文件，不读写任何文件。图片的格式由文件内容开头的标记识别
+     *
+     * @param image            图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @param fileName         提取时使用的文件名
+     * @param content          需要隐藏的文件内容
+     * @param compressionLevel Deflate 压缩级别，0 为不压缩；开头的样本无法压缩的内容会自动跳过压缩
+     * @return 隐写后的图片文件内容
+     */
+    public static byte[] hideFile(ByteBuffer image, String fileName, byte[] content, int compressionLevel) {
+        CompressUtil.checkLevel(compressionLevel);
+        byte[] headerBytes = FileUtil.infoHeaderBytes(fileName, content.length);
+        boolean compress = compressionLevel != CompressUtil.NO_COMPRESSION && CompressUtil.isCompressible(
+                Arrays.copyOf(content, Math.min(content.length, CompressUtil.SAMPLE_BYTES)), compressionLevel);
+        if (compress) headerBytes[headerBytes.length - 4] |= (byte) (CompressUtil.COMPRESSED_FLAG >>> 24);
+
+        ByteBuffer cover = cover(image);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(cover.remaining() + headerBytes.length + content.length + TailFooter.LENGTH);
+
+        try {
+            write(cover, out);
+            int offset = out.size();
+            CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32C());
+            checked.write(headerBytes);
+            writeContent(new ByteArrayInputStream(content), content.length, checked, compress, compressionLevel);
+
+            long checksum = checked.getChecksum().getValue();
+            out.write(new TailFooter(offset, out.size() - offset, TailFooter.MODE_FILE, (byte) 0, checksum).toBytes());
+        } catch (IOException e) {
+            throw new FileOperationException("隐藏文件时出错");
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * 在内存中隐藏字符串，不读写任何文件
+     *
+     * @param image   图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @param message 需要隐藏的字符串
+     * @return 隐写后的图片文件内容
+     */
+    public static byte[] hideString(ByteBuffer image, String message) {
+        byte[] messageBytes = message.getBytes();
+        ByteBuffer cover = cover(image);
+
+        CRC32C checksum = new CRC32C();
+        checksum.update(messageBytes);
+        TailFooter footer = new TailFooter(cover.remaining(), messageBytes.length, TailFooter.MODE_STRING, (byte) 0, checksum.getValue());
+        byte[] footerBytes = footer.toBytes();
+
+        ByteBuffer out = ByteBuffer.allocate(cover.remaining() + messageBytes.length + footerBytes.length);
+        out.put(cover).put(messageBytes).put(footerBytes);
+
+        return out.array();
+    }
+
+    public static String extractFile(String image) {
+        String fileName = extract(image, null);
+
+        return new File(new File(image).getParent(), fileName).getAbsolutePath();
+    }
+
+    /**
+     * 提取隐藏的文件，文件内容直接从图片文件写入输出流，不会整个读入内存<br/>
+     * 校验和在写入的同时计算，写完之后才能发现信息已损坏，此时输出流中已经写入了内容；写入的是同名的文件时删除它
+     *
+     * @param image 图片路径
+     * @param sink  接收文件内容的输出流，不会关闭它；为 null 时写入图片所在目录下与隐藏的文件同名的文件
+     * @return 隐藏的文件名
+     */
+    public static String extract(String image, OutputStream sink) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.TAIL_EXTRACT, image);
+        RandomAccessFile raf = null;
+        FileOutputStream out = null;
+        File output = null;
+        String fileName;
+        long stored;
+        boolean completed = false;
+
+        try {
+            raf = new RandomAccessFile(image, "r");
+            FileChannel channel = raf.getChannel();
+            TailFooter footer = TailFooter.read(channel);
+
+            if (footer == null) {
+                // 没有尾部结构，按旧格式搜索文件结束标记，文件内容直接从映射的缓冲区写出
+                ByteBuffer infoBuffer = getTail(map(channel), FileUtil.getSuffix(image), true);
+                stored = infoBuffer.remaining();
+                timer.mark(StegoMetrics.Stage.DECODE, stored);
+                fileName = readFileName(infoBuffer);
+
+                if (sink == null) sink = out = new FileOutputStream(output = new File(new File(image).getParent(), fileName));
+                copyContent(infoBuffer, sink);
+            } else {
+                if (footer.mode != TailFooter.MODE_FILE) throw new FileOperationException("图片中隐藏的不是文件");
+                stored = footer.length;
+                timer.mark(StegoMetrics.Stage.DECODE, stored);
+
+                // 文件中保存的信息只读取一次，校验和在读取的同时计算
+                CheckedInputStream checked = new CheckedInputStream(
+                        FileUtil.newInputStream(channel, footer.offset, footer.length), new CRC32C());
+                InputStream in = footer.isBase64() ? Base64.getDecoder().wrap(checked) : checked;
+                DataInputStream dis = new DataInputStream(in);
+
                 try {
-                    bis.close();
+                    int fileNameLength = dis.readInt();
+                    if (fileNameLength < 0 || fileNameLength > footer.length) throw new EOFException("信息长度不足");
+                    byte[] fileNameBytes = new byte[fileNameLength];
+                    dis.readFully(fileNameBytes);
+                    int contentLength = dis.readInt();
+                    fileName = new String(fileNameBytes);
+
+                    if (sink == null) sink = out = new FileOutputStream(output = new File(new File(image).getParent(), fileName));
+                    if ((contentLength & CompressUtil.COMPRESSED_FLAG) != 0) {
+                        // 长度字段的最高位表示内容经过压缩，其余的位是解压后的长度
+                        InputStream inflater = CompressUtil.newInflaterStream(dis);
+                        try {
+                            FileUtil.copyStream(inflater, sink, contentLength & ~CompressUtil.COMPRESSED_FLAG);
+                        } finally {
+                            FileUtil.closeQuietly(inflater);
+                        }
+                    } else {
+                        FileUtil.copyStream(dis, sink, contentLength);
+                    }
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    checkIntegrity(checked, footer); // 信息损坏导致的解压、长度错误按校验和不一致报告
+                    throw e;
                 }
+                checkIntegrity(checked, footer);
             }
-            if (bos != null) {
-                try {
-                    bos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            sink.flush();
+            completed = true;
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("提取文件时出错");
+        } finally {
+            FileUtil.closeQuietly(raf, out);
+            if (!completed && output != null) output.delete(); // 不保留不完整或已损坏的文件
+        }
+        timer.mark(StegoMetrics.Stage.EXTRACT, stored);
+        timer.finish();
+
+        return fileName;
+    }
+
+    /**
+     * 读完文件中保存的信息中剩余的部分，并与尾部结构中记录的校验和比较
+     *
+     * @param checked 读取文件中保存的信息（编码之后）的输入流，解压、解码时没有读到的剩余部分也计入校验和
+     * @throws FileOperationException 校验和不一致
+     */
+    private static void checkIntegrity(CheckedInputStream checked, TailFooter footer) throws IOException {
+        while (checked.skip(Long.MAX_VALUE) > 0) {
+            // 跳过时同样经过校验和
+        }
+        if (footer.isChecked() && checked.getChecksum().getValue() != footer.checksum)
+            throw new FileOperationException("隐藏的信息已损坏，校验和不一致");
+    }
+
+    /**
+     * 从内存中的图片文件内容提取隐藏的文件，不读写任何文件
+     *
+     * @param image 图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @param sink  接收文件内容的输出流，不会关闭它
+     * @return 隐藏的文件名
+     */
+    public static String extract(ByteBuffer image, OutputStream sink) {
+        ByteBuffer buffer = image.slice();
+        TailFooter footer = TailFooter.read(buffer);
+        ByteBuffer infoBuffer;
+
+        if (footer == null) {
+            infoBuffer = getTail(buffer, legacyFormatOf(buffer), true); // 没有尾部结构，按旧格式搜索文件结束标记
+        } else {
+            if (footer.mode != TailFooter.MODE_FILE) throw new FileOperationException("图片中隐藏的不是文件");
+            if (!footer.verify(buffer)) throw new FileOperationException("隐藏的信息已损坏，校验和不一致");
+            infoBuffer = footer.payload(buffer);
+            if (footer.isBase64()) infoBuffer = Base64.getDecoder().decode(infoBuffer);
+        }
+
+        try {
+            String fileName = readFileName(infoBuffer);
+            copyContent(infoBuffer, sink);
+            sink.flush();
+
+            return fileName;
+        } catch (IOException e) {
+            throw new FileOperationException("提取文件时出错");
+        }
+    }
+
+    public static String extractString(String image) {
+        StageTimer timer = StegoMetrics.begin(StegoMetrics.Operation.TAIL_EXTRACT, image);
+        RandomAccessFile raf = null;
+
+        try {
+            raf = new RandomAccessFile(image, "r");
+            FileChannel channel = raf.getChannel();
+            TailFooter footer = TailFooter.read(channel);
+            String message;
+            if (footer == null) {
+                message = extractLegacyString(image, channel); // 没有尾部结构，按旧格式搜索文件结束标记
+                timer.mark(StegoMetrics.Stage.EXTRACT, -1);
+            } else {
+                if (footer.mode != TailFooter.MODE_STRING) throw new FileOperationException("图片中隐藏的不是字符串");
+                if (footer.length > Integer.MAX_VALUE) throw new FileOperationException("隐藏的字符串过长");
+                timer.mark(StegoMetrics.Stage.DECODE, footer.length);
+
+                message = decodeString(FileUtil.readFully(channel, footer.offset, (int) footer.length), footer);
+                timer.mark(StegoMetrics.Stage.EXTRACT, footer.length);
             }
+            timer.finish();
+
+            return message;
+        } catch (FileNotFoundException e) {
+            throw new FileOperationException("没有找到指定的文件");
+        } catch (IOException e) {
+            throw new FileOperationException("提取字符串时出错");
+        } finally {
+            FileUtil.closeQuietly(raf);
         }
+    }
 
-        return output;
+    /**
+     * 从内存中的图片文件内容提取隐藏的字符串，不读写任何文件
+     *
+     * @param image 图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @return 隐藏的字符串
+     */
+    public static String extractString(ByteBuffer image) {
+        ByteBuffer buffer = image.slice();
+        TailFooter footer = TailFooter.read(buffer);
+        if (footer == null) return toString(getTail(buffer, legacyFormatOf(buffer), false)); // 按旧格式搜索文件结束标记
+        if (footer.mode != TailFooter.MODE_STRING) throw new FileOperationException("图片中隐藏的不是字符串");
+
+        byte[] messageBytes = new byte[(int) footer.length];
+        footer.payload(buffer).get(messageBytes);
+
+        return decodeString(messageBytes, footer);
     }
 
-    public static String extractFile(String image) {
-        byte[] infoBytes;
-        String suffix = FileUtil.getSuffix(image);
-        String output;
+    /**
+     * 校验尾部结构之前的字符串，Base64 编码时解码
+     */
+    private static String decodeString(byte[] messageBytes, TailFooter footer) {
+        if (footer.isChecked()) {
+            CRC32C checksum = new CRC32C();
+            checksum.update(messageBytes);
+            if (checksum.getValue() != footer.checksum) throw new FileOperationException("隐藏的信息已损坏，校验和不一致");
+        }
+        if (footer.isBase64()) messageBytes = Base64.getDecoder().decode(messageBytes);
 
-        infoBytes = getTail(FileUtil.file2Bytes(image), suffix);
-        output = FileUtil.getInfoBytesName(infoBytes);
-        byte[] contentBytes = FileUtil.getInfoBytesContent(infoBytes);
+        return new String(messageBytes);
+    }
 
-        File file = new File(new File(image).getParent(), output);
-        BufferedOutputStream bos = null;
+    /**
+     * 探测图片中是否有文件末尾隐写的信息，只读取文件最后的尾部结构，不读取图片和信息<br/>
+     * 没有尾部结构的旧格式无法探测，结果为没有隐藏信息
+     *
+     * @param image 图片路径
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(String image) {
+        RandomAccessFile raf = null;
 
         try {
-            bos = new BufferedOutputStream(new FileOutputStream(file));
-            bos.write(contentBytes);
+            raf = new RandomAccessFile(image, "r");
+            return toPayloadInfo(TailFooter.read(raf.getChannel()));
         } catch (FileNotFoundException e) {
             throw new FileOperationException("没有找到指定的文件");
         } catch (IOException e) {
-            throw new FileOperationException("提取文件时出错");
+            throw new FileOperationException("读取图片文件时出错");
         } finally {
-            if (bos != null) {
-                try {
-                    bos.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+            FileUtil.closeQuietly(raf);
         }
+    }
 
-        return file.getAbsolutePath();
+    /**
+     * 探测内存中的图片文件内容是否有文件末尾隐写的信息，只读取最后的尾部结构
+     *
+     * @param image 图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @return 探测结果
+     */
+    public static PayloadInfo probe(ByteBuffer image) {
+        return toPayloadInfo(TailFooter.read(image.slice()));
     }
 
-    public static String extractString(String image) {
-        byte[] infoBytes;
-        String suffix = FileUtil.getSuffix(image);
+    private static PayloadInfo toPayloadInfo(TailFooter footer) {
+        if (footer == null) return PayloadInfo.NONE;
 
-        infoBytes = getTail(FileUtil.file2Bytes(image), suffix);
+        PayloadInfo.Type type = PayloadInfo.typeOf(footer.mode, TailFooter.MODE_FILE, TailFooter.MODE_STRING);
+        return new PayloadInfo(true, footer.version, type, footer.length, 0, footer.isChecked());
+    }
+
+    private static String extractLegacyString(String image, FileChannel channel) throws IOException {
+        return toString(getTail(map(channel), FileUtil.getSuffix(image), false));
+    }
+
+    private static String toString(ByteBuffer infoBuffer) {
+        byte[] infoBytes = new byte[infoBuffer.remaining()];
+        infoBuffer.get(infoBytes);
 
         return new String(infoBytes);
     }
 
-    private static byte[] getTail(byte[] imageBytes, String suffix) {
-        byte[] tail;
+    /**
+     * 读取文件信息开头的文件名，之后缓冲区的 position 位于内容的长度字段
+     */
+    private static String readFileName(ByteBuffer infoBuffer) throws IOException {
+        int fileNameLength = infoBuffer.remaining() < 4 ? -1 : infoBuffer.getInt();
+        if (fileNameLength < 0 || fileNameLength > infoBuffer.remaining()) throw new EOFException("信息长度不足");
+
+        byte[] fileNameBytes = new byte[fileNameLength];
+        infoBuffer.get(fileNameBytes);
+
+        return new String(fileNameBytes);
+    }
+
+    /**
+     * 读取内容的长度字段，并将内容写入输出流。长度字段的最高位表示内容经过压缩，此时其余的位是解压后的长度
+     */
+    private static void copyContent(ByteBuffer infoBuffer, OutputStream sink) throws IOException {
+        if (infoBuffer.remaining() < 4) throw new EOFException("信息长度不足");
+        int contentLength = infoBuffer.getInt();
+
+        if ((contentLength & CompressUtil.COMPRESSED_FLAG) != 0) {
+            InputStream inflater = CompressUtil.newInflaterStream(FileUtil.newInputStream(infoBuffer));
+            try {
+                FileUtil.copyStream(inflater, sink, contentLength & ~CompressUtil.COMPRESSED_FLAG);
+            } finally {
+                FileUtil.closeQuietly(inflater);
+            }
+            return;
+        }
+
+        if (contentLength > infoBuffer.remaining()) throw new EOFException("信息长度不足");
+        infoBuffer.limit(infoBuffer.position() + contentLength);
+        write(infoBuffer, sink);
+    }
+
+    /**
+     * 将缓冲区中 position 到 limit 之间的字节写入输出流，不改变缓冲区的 position
+     */
+    private static void write(ByteBuffer buffer, OutputStream out) throws IOException {
+        ByteBuffer duplicate = buffer.duplicate();
+        WritableByteChannel channel = channelOf(out);
+
+        while (duplicate.hasRemaining()) channel.write(duplicate);
+    }
+
+    /**
+     * 由文件内容开头的标记识别图片的格式，返回与后缀名相同形式的格式名，无法识别时返回 null
+     */
+    private static String formatOf(ByteBuffer image) {
+        if (startsWith(image, 0xff, 0xd8)) return "JPG";
+        if (startsWith(image, 0x89, 'P', 'N', 'G')) return "PNG";
+        if (startsWith(image, 'G', 'I', 'F')) return "GIF";
+        if (startsWith(image, 'B', 'M')) return "BMP";
+
+        return null;
+    }
+
+    /**
+     * 内存中的图片没有后缀名，按旧格式提取时由文件内容识别格式
+     */
+    private static String legacyFormatOf(ByteBuffer image) {
+        String format = formatOf(image);
+        if (format == null) throw new FileOperationException("不支持的图片格式");
+
+        return format;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int... prefix) {
+        if (buffer.remaining() < prefix.length) return false;
+
+        for (int i = 0; i < prefix.length; i++) {
+            if ((buffer.get(buffer.position() + i) & 0xff) != prefix[i]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 获取写入输出流的通道，文件输出流直接使用它的文件通道，使 <code>transferTo</code> 不经过 Java 堆
+     */
+    private static WritableByteChannel channelOf(OutputStream out) {
+        return out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : Channels.newChannel(out);
+    }
+
+    private static ByteBuffer map(FileChannel channel) throws IOException {
+        if (channel.size() > Integer.MAX_VALUE) throw new FileOperationException("图片文件过大");
+
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    /**
+     * 按旧格式（没有尾部结构）获取隐藏的信息
+     *
+     * @param imageBuffer 图片文件的内容
+     * @param suffix      图片的后缀名
+     * @param infoBytes   隐藏的是否为 <code>file2InfoBytes</code> 格式的文件信息，是则用它的长度字段校验结束标记的位置
+     * @return 隐藏的信息所在的缓冲区，与图片文件的内容共享存储，不复制
+     */
+    private static ByteBuffer getTail(ByteBuffer imageBuffer, String suffix, boolean infoBytes) {
+        int from;
 
         if (suffix.toUpperCase().equals("JPEG") | suffix.toUpperCase().equals("JPG"))
-            tail = getJpegTail(imageBytes);
+            from = getMarkerTailOffset(imageBuffer, JPEG_END, infoBytes);
         else if (suffix.toUpperCase().equals("PNG"))
-            tail = getPngTail(imageBytes);
+            from = getMarkerTailOffset(imageBuffer, PNG_END, infoBytes);
         else if (suffix.toUpperCase().equals("GIF"))
-            tail = getGifTail(imageBytes);
+            return getGifTail(imageBuffer);
         else if (suffix.toUpperCase().equals("BMP"))
-            tail = getBmpTail(imageBytes);
+            from = getBmpTailOffset(imageBuffer);
         else throw new RuntimeException("不支持后缀为" + suffix + "的文件的隐写");
 
-        return tail;
+        return slice(imageBuffer, from);
+    }
+
+    /**
+     * 从文件末尾反向搜索图片的结束标记，返回其后第一个字节的位置<br/>
+     * 正向搜索会命中 EXIF 缩略图等内嵌图片的结束标记；反向搜索则可能命中隐藏信息中恰好出现的标记，
+     * 所以隐藏的是文件信息时，会继续向前搜索，直到标记之后的内容恰好是一个完整的文件信息
+     */
+    private static int getMarkerTailOffset(ByteBuffer imageBuffer, BytePattern marker, boolean infoBytes) {
+        int index = marker.lastIndexOf(imageBuffer);
+
+        while (infoBytes && index != -1 && !isInfoBytes(imageBuffer, index + marker.length()))
+            index = marker.lastIndexOf(imageBuffer, index - 1);
+
+        if (index == -1) throw new FileOperationException("没有找到图片的结束标记");
+
+        return index + marker.length();
     }
 
-    private static byte[] getJpegTail(byte[] imageBytes) {
-        int from = ByteUtil.searchSubList(imageBytes, JPEG_END) + JPEG_END.length;
+    private static boolean isInfoBytes(ByteBuffer imageBuffer, int from) {
+        long end = imageBuffer.limit();
+        if (end - from < 8) return false;
+
+        long fileNameLength = imageBuffer.getInt(from);
+        if (fileNameLength < 0 || from + 8 + fileNameLength > end) return false;
+        long contentLength = imageBuffer.getInt(from + 4 + (int) fileNameLength);
 
-        return Arrays.copyOfRange(imageBytes, from, imageBytes.length);
+        return contentLength >= 0 && from + 8 + fileNameLength + contentLength == end;
     }
 
-    private static byte[] getPngTail(byte[] imageBytes) {
-        int from = ByteUtil.searchSubList(imageBytes, PNG_END) + PNG_END.length;
+    private static ByteBuffer getGifTail(ByteBuffer imageBuffer) {
+        // 旧格式的信息经过 Base64 编码，其字符集中没有 ';'，所以最后一个 ';' 就是 GIF 的结束标记
+        int from = GIF_END.lastIndexOf(imageBuffer) + 1;
 
-        return Arrays.copyOfRange(imageBytes, from, imageBytes.length);
+        return Base64.getDecoder().decode(slice(imageBuffer, from));
     }
 
-    private static byte[] getGifTail(byte[] imageBytes) {
-        String str = new String(imageBytes);
-        int from = str.lastIndexOf(";") + 1;
-        String base64 = str.substring(from, str.length());
+    /**
+     * 按 GIF 的块结构依次跳过逻辑屏幕描述符、颜色表、扩展块和图像块，找到真正的结束标记，返回其后第一个字节的位置。
+     * 只读取各块的长度字段，不受之后的内容中出现的 ';' 影响
+     */
+    private static int getGifEndOffset(ByteBuffer imageBuffer) {
+        ByteBuffer buffer = imageBuffer.slice();
+        if (!startsWith(buffer, 'G', 'I', 'F')) throw new FileOperationException("不是 GIF 图片");
+
+        try {
+            int p = 6 + 7; // 文件头 + 逻辑屏幕描述符
+            int packed = buffer.get(10) & 0xff;
+            if ((packed & 0x80) != 0) p += 3 << (packed & 0x07) + 1; // 全局颜色表
+
+            while (true) {
+                int introducer = buffer.get(p) & 0xff;
+                if (introducer == 0x3b) return p + 1; // 结束标记
+
+                if (introducer == 0x21) { // 扩展块：标签之后是数据子块
+                    p += 2;
+                } else if (introducer == 0x2c) { // 图像描述符，之后是局部颜色表、LZW 最小码长和数据子块
+                    packed = buffer.get(p + 9) & 0xff;
+                    p += 10;
+                    if ((packed & 0x80) != 0) p += 3 << (packed & 0x07) + 1;
+                    p += 1;
+                } else {
+                    throw new FileOperationException("GIF 图片已损坏");
+                }
+
+                for (int size = buffer.get(p) & 0xff; size != 0; size = buffer.get(p) & 0xff) p += size + 1;
+                p += 1;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new FileOperationException("GIF 图片不完整，没有找到结束标记");
+        }
+    }
 
-        return Base64.getDecoder().decode(base64);
+    private static int getBmpTailOffset(ByteBuffer imageBuffer) {
+        // 描述文件大小的比特串是按“小端方式”存储的
+        return imageBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(2);
     }
 
-    private static byte[] getBmpTail(byte[] imageBytes) {
-        byte[] fileLengthBytes = Arrays.copyOfRange(imageBytes, 2, 6); // 描述文件大小的比特串
-        ByteUtil.reverseBytes(fileLengthBytes); // 比特串是按“小端方式”存储的，需要进行复原
-        int fileLength = ByteUtil.bytes2Int(fileLengthBytes);
+    private static ByteBuffer slice(ByteBuffer buffer, int from) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(from);
 
-        return Arrays.copyOfRange(imageBytes, fileLength, imageBytes.length);
+        return duplicate.slice();
     }
 }
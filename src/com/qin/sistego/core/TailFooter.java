@@ -0,0 +1,167 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.util.CRC32C;
+import com.qin.sistego.util.FileUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 文件末尾隐写的定长尾部结构，写在隐藏信息之后，位于文件的最末端<br/>
+ * 版本 1（大端方式）：信息的起始位置（8 字节）+ 信息的字节数（8 字节）+ 模式（1 字节）+ 标志位（1 字节）
+ * + 保留（1 字节）+ 版本（1 字节）+ 魔数 "SIST"（4 字节），共 24 字节<br/>
+ * 版本 2：在信息的字节数之后增加信息的 CRC-32C（4 字节）+ 保留（4 字节），共 {@link #LENGTH} 字节<br/>
+ * 各版本的最后 8 个字节相同，先读取版本再按版本确定尾部结构的长度。
+ * 提取时只需读取文件最后的几十个字节即可定位隐藏的信息，不需要读取和扫描整个文件
+ */
+class TailFooter {
+
+    static final int LENGTH = 32;
+    static final byte VERSION = 2;
+
+    static final byte MODE_STRING = 0;
+    static final byte MODE_FILE = 1;
+
+    static final byte FLAG_BASE64 = 0x01; // 隐藏的信息经过了 Base64 编码，只有旧版本在 GIF 中隐藏时会设置
+
+    private static final int V1_LENGTH = 24;
+    private static final int TRAILER_LENGTH = 8; // 各版本相同的最后 8 个字节
+    private static final byte[] MAGIC = {'S', 'I', 'S', 'T'};
+
+    final byte version;
+    final long offset;
+    final long length;
+    final byte mode;
+    final byte flags;
+    final long checksum;
+
+    /**
+     * 创建当前版本的尾部结构
+     *
+     * @param offset   信息的起始位置
+     * @param length   信息的字节数
+     * @param mode     隐藏的是文件还是字符串
+     * @param flags    标志位
+     * @param checksum 文件中保存的信息（编码之后）的 CRC-32C
+     */
+    TailFooter(long offset, long length, byte mode, byte flags, long checksum) {
+        this(VERSION, offset, length, mode, flags, checksum);
+    }
+
+    private TailFooter(byte version, long offset, long length, byte mode, byte flags, long checksum) {
+        this.version = version;
+        this.offset = offset;
+        this.length = length;
+        this.mode = mode;
+        this.flags = flags;
+        this.checksum = checksum;
+    }
+
+    boolean isBase64() {
+        return (flags & FLAG_BASE64) != 0;
+    }
+
+    /**
+     * @return 是否记录了校验和（版本 2 及以上）
+     */
+    boolean isChecked() {
+        return version >= 2;
+    }
+
+    byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.putLong(offset).putLong(length).putInt((int) checksum).putInt(0);
+        buffer.put(mode).put(flags).put((byte) 0).put(version).put(MAGIC);
+
+        return buffer.array();
+    }
+
+    /**
+     * 计算内存中的图片文件内容里保存的信息的 CRC-32C，并与尾部结构中记录的比较
+     *
+     * @param image 图片文件的内容，从索引 0 开始
+     * @return 没有记录校验和，或校验和一致时返回 true
+     */
+    boolean verify(ByteBuffer image) {
+        if (!isChecked()) return true;
+
+        CRC32C crc = new CRC32C();
+        crc.update(slice(image, offset, length));
+
+        return crc.getValue() == checksum;
+    }
+
+    /**
+     * 返回内存中的图片文件内容里保存的信息，与图片共享存储，不复制
+     *
+     * @param image 图片文件的内容，从索引 0 开始
+     */
+    ByteBuffer payload(ByteBuffer image) {
+        return slice(image, offset, length);
+    }
+
+    /**
+     * 读取文件末尾的尾部结构
+     *
+     * @param channel 图片文件的通道
+     * @return 尾部结构，文件不是以此格式写入时返回 null
+     * @throws IOException 读取文件时出错
+     */
+    static TailFooter read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int n = (int) Math.min(size, LENGTH);
+
+        return parse(ByteBuffer.wrap(FileUtil.readFully(channel, size - n, n)), size);
+    }
+
+    /**
+     * 读取内存中的图片文件内容末尾的尾部结构
+     *
+     * @param image 图片文件的内容，从索引 0 开始
+     * @return 尾部结构，不是以此格式写入时返回 null
+     */
+    static TailFooter read(ByteBuffer image) {
+        int n = Math.min(image.limit(), LENGTH);
+
+        return parse(slice(image, image.limit() - n, n), image.limit());
+    }
+
+    /**
+     * 解析尾部结构，一次读取当前版本的长度，旧版本的尾部结构只使用其中最后的部分
+     *
+     * @param end  文件最后的（最多 {@link #LENGTH} 个）字节，从索引 0 开始
+     * @param size 文件的大小
+     */
+    private static TailFooter parse(ByteBuffer end, long size) {
+        int n = end.limit();
+        if (n < TRAILER_LENGTH) return null;
+
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (end.get(n - MAGIC.length + i) != MAGIC[i]) return null;
+        }
+
+        byte mode = end.get(n - TRAILER_LENGTH);
+        byte flags = end.get(n - TRAILER_LENGTH + 1);
+        byte version = end.get(n - TRAILER_LENGTH + 3);
+        int footerLength = version == 1 ? V1_LENGTH : version == VERSION ? LENGTH : -1;
+        if (footerLength < 0 || n < footerLength) return null;
+
+        end.position(n - footerLength);
+        long offset = end.getLong();
+        long length = end.getLong();
+        long checksum = version == 1 ? 0 : end.getInt() & 0xffffffffL;
+
+        // 偶然以魔数结尾的旧格式文件无法通过以下校验，会继续按旧格式处理
+        if (offset < 0 || length < 0 || offset + length != size - footerLength) return null;
+
+        return new TailFooter(version, offset, length, mode, flags, checksum);
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long from, long length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit((int) (from + length)).position((int) from);
+
+        return duplicate.slice();
+    }
+}
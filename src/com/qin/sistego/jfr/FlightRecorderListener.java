@@ -0,0 +1,26 @@
+package com.qin.sistego.jfr;
+
+import com.qin.sistego.core.StageRecord;
+import com.qin.sistego.core.StegoListener;
+
+/**
+ * 把每个阶段记录为 {@link StageEvent}，由 <code>StegoMetrics.enableFlightRecorder</code> 通过反射创建，
+ * 所以这个包只在 JDK 11 及以上编译<br/>
+ * 没有录制或录制中没有启用该事件时只创建一个事件对象，不写入任何数据
+ */
+public class FlightRecorderListener implements StegoListener {
+
+    @Override
+    public void stageCompleted(StageRecord record) {
+        StageEvent event = new StageEvent();
+        if (!event.isEnabled()) return;
+
+        event.operation = record.getOperation().name();
+        event.stage = record.getStage().name();
+        event.image = record.getImage();
+        event.stageDuration = record.getDurationNanos();
+        event.bytes = record.getBytes();
+        event.allocated = record.getAllocatedBytes();
+        event.commit();
+    }
+}
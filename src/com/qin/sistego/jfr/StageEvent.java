@@ -0,0 +1,42 @@
+package com.qin.sistego.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * 隐写或提取的一个阶段，在操作完成时提交，所以事件的开始时间是操作的结束时间，阶段的耗时见 stageDuration
+ */
+@Name("com.qin.sistego.Stage")
+@Label("Stego Stage")
+@Category("SIStego")
+@Description("隐写或提取的一个阶段的耗时、处理的字节数和分配的内存")
+@StackTrace(false)
+class StageEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Image")
+    String image;
+
+    @Label("Stage Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long stageDuration;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Allocated")
+    @Description("执行操作的线程在这个阶段中分配的内存，不支持统计时为 -1")
+    @DataAmount
+    long allocated;
+}
@@ -0,0 +1,167 @@
+package com.qin.sistego.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 预编译的 byte 序列搜索模式，使用 Boyer-Moore-Horspool 算法<br/>
+ * 正向搜索按窗口的最后一个字节查表跳跃，反向搜索按窗口的第一个字节查表跳跃，
+ * 平均情况下只需检查源数据中约 n/m 个字节<br/>
+ * 编译后的模式是不可变的，可以在多个线程之间共享
+ */
+public final class BytePattern {
+
+    private final byte[] pattern;
+    private final int[] shift = new int[256]; // 正向搜索的跳跃表
+    private final int[] reverseShift = new int[256]; // 反向搜索的跳跃表
+
+    private BytePattern(byte[] pattern) {
+        this.pattern = pattern.clone();
+        int m = pattern.length;
+
+        for (int c = 0; c < 256; c++) {
+            shift[c] = m;
+            reverseShift[c] = m;
+        }
+        for (int j = 0; j < m - 1; j++) {
+            shift[pattern[j] & 0xff] = m - 1 - j;
+        }
+        for (int j = m - 1; j > 0; j--) {
+            reverseShift[pattern[j] & 0xff] = j;
+        }
+    }
+
+    /**
+     * 编译搜索模式
+     *
+     * @param pattern 需要搜索的 byte 序列，长度不能为 0
+     * @return 编译后的搜索模式
+     */
+    public static BytePattern compile(byte[] pattern) {
+        if (pattern.length == 0) throw new IllegalArgumentException("搜索的 byte 序列长度不能为 0");
+
+        return new BytePattern(pattern);
+    }
+
+    /**
+     * @return 搜索模式的长度
+     */
+    public int length() {
+        return pattern.length;
+    }
+
+    /**
+     * 在源数组中正向搜索模式第一次出现的位置
+     *
+     * @param src 源数组
+     * @return 找到则返回开始位置的索引，未找到则返回 -1
+     */
+    public int indexOf(byte[] src) {
+        return indexOf(src, 0);
+    }
+
+    /**
+     * 从指定位置开始在源数组中正向搜索模式第一次出现的位置
+     *
+     * @param src  源数组
+     * @param from 开始搜索的位置
+     * @return 找到则返回开始位置的索引，未找到则返回 -1
+     */
+    public int indexOf(byte[] src, int from) {
+        int m = pattern.length;
+
+        for (int i = Math.max(from, 0); i <= src.length - m; i += shift[src[i + m - 1] & 0xff]) {
+            int j = m - 1;
+            while (j >= 0 && src[i + j] == pattern[j]) j--;
+            if (j < 0) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * 在源数组中从末尾反向搜索模式最后一次出现的位置
+     *
+     * @param src 源数组
+     * @return 找到则返回开始位置的索引，未找到则返回 -1
+     */
+    public int lastIndexOf(byte[] src) {
+        return lastIndexOf(src, src.length - pattern.length);
+    }
+
+    /**
+     * 从指定位置开始在源数组中反向搜索模式最后一次出现的位置
+     *
+     * @param src  源数组
+     * @param from 模式开始位置的最大值
+     * @return 找到则返回开始位置的索引，未找到则返回 -1
+     */
+    public int lastIndexOf(byte[] src, int from) {
+        int m = pattern.length;
+
+        for (int i = Math.min(from, src.length - m); i >= 0; i -= reverseShift[src[i] & 0xff]) {
+            int j = 0;
+            while (j < m && src[i + j] == pattern[j]) j++;
+            if (j == m) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * 在缓冲区的 [0, limit) 范围内正向搜索模式第一次出现的位置，不改变缓冲区的 position
+     *
+     * @param src 源缓冲区，可以是 <code>MappedByteBuffer</code>
+     * @return 找到则返回开始位置的绝对索引，未找到则返回 -1
+     */
+    public int indexOf(ByteBuffer src) {
+        return indexOf(src, 0);
+    }
+
+    /**
+     * 从指定位置开始在缓冲区中正向搜索模式第一次出现的位置，不改变缓冲区的 position
+     *
+     * @param src  源缓冲区，可以是 <code>MappedByteBuffer</code>
+     * @param from 开始搜索的绝对位置
+     * @return 找到则返回开始位置的绝对索引，未找到则返回 -1
+     */
+    public int indexOf(ByteBuffer src, int from) {
+        int m = pattern.length;
+
+        for (int i = Math.max(from, 0); i <= src.limit() - m; i += shift[src.get(i + m - 1) & 0xff]) {
+            int j = m - 1;
+            while (j >= 0 && src.get(i + j) == pattern[j]) j--;
+            if (j < 0) return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * 在缓冲区的 [0, limit) 范围内从末尾反向搜索模式最后一次出现的位置，不改变缓冲区的 position
+     *
+     * @param src 源缓冲区，可以是 <code>MappedByteBuffer</code>
+     * @return 找到则返回开始位置的绝对索引，未找到则返回 -1
+     */
+    public int lastIndexOf(ByteBuffer src) {
+        return lastIndexOf(src, src.limit() - pattern.length);
+    }
+
+    /**
+     * 从指定位置开始在缓冲区中反向搜索模式最后一次出现的位置，不改变缓冲区的 position
+     *
+     * @param src  源缓冲区，可以是 <code>MappedByteBuffer</code>
+     * @param from 模式开始位置的最大值（绝对位置）
+     * @return 找到则返回开始位置的绝对索引，未找到则返回 -1
+     */
+    public int lastIndexOf(ByteBuffer src, int from) {
+        int m = pattern.length;
+
+        for (int i = Math.min(from, src.limit() - m); i >= 0; i -= reverseShift[src.get(i) & 0xff]) {
+            int j = 0;
+            while (j < m && src.get(i + j) == pattern[j]) j++;
+            if (j == m) return i;
+        }
+
+        return -1;
+    }
+}
@@ -122,35 +122,29 @@ public class ByteUtil {
     }
 
     /**
-     * 在源数组中搜索目标数组
+     * 在源数组中搜索目标数组<br/>
+     * 需要重复搜索同一目标或需要反向搜索时，应直接使用预编译的 {@link BytePattern}
      *
      * @param src 源数组
      * @param target 目标 数组
-     * @return 找到目标数组则返回它的开始位置的索引，未找到则返回 -1
+     * @return 找到目标数组则返回它的开始位置的索引，未找到则返回 -1。目标数组为空时，源数组不为空则返回 0，否则返回 -1
      */
     public static int searchSubList(byte[] src, byte[] target) {
-        boolean flag = false;
-        int endIndex = -1;
-
-        for (int i = 0, j; i < src.length; i++) {
-            for (j = 0; j < target.length; j++) {
-                if ((i + j) >= src.length) {
-                    flag = true;
-                    break;
-                }
-                if (src[i + j] != target[j]) {
-                    break;
-                }
-            }
-            if (flag)
-                break;
-            if (j == target.length) {
-                endIndex = i;
-                break;
-            }
-        }
+        if (target.length == 0) return src.length > 0 ? 0 : -1; // 与原来逐字节比较的实现相同
+
+        return BytePattern.compile(target).indexOf(src);
+    }
 
-        return endIndex;
+    /**
+     * 在源数组中从末尾反向搜索目标数组
+     *
+     * @param src 源数组
+     * @param target 目标数组
+     * @return 找到目标数组则返回它最后一次出现的开始位置的索引，未找到则返回 -1
+     * @throws IllegalArgumentException 目标数组为空
+     */
+    public static int lastSearchSubList(byte[] src, byte[] target) {
+        return BytePattern.compile(target).lastIndexOf(src);
     }
 
     /**
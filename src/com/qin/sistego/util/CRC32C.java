@@ -0,0 +1,90 @@
+package com.qin.sistego.util;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C（Castagnoli）校验和，与 JDK 9 的 <code>java.util.zip.CRC32C</code> 结果相同<br/>
+ * 本项目基于 jdk 1.8，所以自行实现：使用 slicing-by-8 查表，每次处理 8 个字节
+ */
+public final class CRC32C implements Checksum {
+
+    private static final int POLY = 0x82f63b78; // 反转后的 Castagnoli 多项式
+
+    private static final int[][] TABLE = new int[8][256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int k = 0; k < 8; k++) {
+                crc = (crc & 1) != 0 ? crc >>> 1 ^ POLY : crc >>> 1;
+            }
+            TABLE[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            int crc = TABLE[0][n];
+            for (int t = 1; t < 8; t++) {
+                crc = TABLE[0][crc & 0xff] ^ crc >>> 8;
+                TABLE[t][n] = crc;
+            }
+        }
+    }
+
+    private int crc = 0xffffffff;
+
+    @Override
+    public void update(int b) {
+        crc = TABLE[0][(crc ^ b) & 0xff] ^ crc >>> 8;
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+        int c = crc;
+        int end = off + len;
+
+        for (; off + 8 <= end; off += 8) {
+            int low = c ^ (b[off] & 0xff | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+            c = TABLE[7][low & 0xff] ^ TABLE[6][low >>> 8 & 0xff] ^ TABLE[5][low >>> 16 & 0xff] ^ TABLE[4][low >>> 24]
+                    ^ TABLE[3][b[off + 4] & 0xff] ^ TABLE[2][b[off + 5] & 0xff] ^ TABLE[1][b[off + 6] & 0xff] ^ TABLE[0][b[off + 7] & 0xff];
+        }
+        for (; off < end; off++) {
+            c = TABLE[0][(c ^ b[off]) & 0xff] ^ c >>> 8;
+        }
+
+        crc = c;
+    }
+
+    public void update(byte[] b) {
+        update(b, 0, b.length);
+    }
+
+    /**
+     * 用缓冲区中 position 到 limit 之间的字节更新校验和，之后缓冲区的 position 等于 limit
+     *
+     * @param buffer 缓冲区，可以是直接缓冲区或 <code>MappedByteBuffer</code>
+     */
+    public void update(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        byte[] bytes = new byte[Math.min(buffer.remaining(), 8192)];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(buffer.remaining(), bytes.length);
+            buffer.get(bytes, 0, n);
+            update(bytes, 0, n);
+        }
+    }
+
+    @Override
+    public long getValue() {
+        return ~crc & 0xffffffffL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xffffffff;
+    }
+}
@@ -0,0 +1,122 @@
+package com.qin.sistego.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 隐藏信息的 Deflate 压缩<br/>
+ * 文件信息（<code>file2InfoBytes</code> 格式）中内容长度字段的最高位（符号位）表示内容是否经过压缩，
+ * 压缩时该字段的其余 31 位仍是压缩前的长度，压缩后的数据是自带结束标记的 zlib 流，所以不需要预先知道压缩后的长度，
+ * 可以边读取边压缩
+ */
+public class CompressUtil {
+
+    /**
+     * 不压缩，各方法的压缩级别参数的默认值
+     */
+    public static final int NO_COMPRESSION = Deflater.NO_COMPRESSION;
+
+    /**
+     * 长度字段中表示内容经过压缩的标志位
+     */
+    public static final int COMPRESSED_FLAG = 0x80000000;
+
+    /**
+     * 判断数据是否可以压缩时使用的样本的最大字节数
+     */
+    public static final int SAMPLE_BYTES = 64 * 1024;
+
+    private static final double MIN_SAVING = 0.1; // 样本压缩后至少减小 10% 才压缩
+
+    /**
+     * 检查压缩级别是否合法
+     *
+     * @param level 0（不压缩）到 9，或 -1（Deflate 的默认级别）
+     */
+    public static void checkLevel(int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("压缩级别应在 " + Deflater.DEFAULT_COMPRESSION + " 到 " + Deflater.BEST_COMPRESSION + " 之间");
+    }
+
+    /**
+     * 压缩数据开头的样本，判断数据是否值得压缩。图片、压缩包、加密数据等已经无法压缩的数据原样保存，
+     * 避免压缩的开销和 zlib 格式本身带来的少量膨胀
+     *
+     * @param sample 样本，一般是数据开头的 {@link #SAMPLE_BYTES} 个字节
+     * @param level  压缩级别
+     * @return 样本压缩后至少减小 10% 时返回 true
+     */
+    public static boolean isCompressible(byte[] sample, int level) {
+        if (level == NO_COMPRESSION || sample.length == 0) return false;
+
+        Deflater deflater = new Deflater(level);
+        byte[] buffer = new byte[8192];
+        long compressed = 0;
+        long limit = (long) (sample.length * (1 - MIN_SAVING));
+
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            while (!deflater.finished() && compressed < limit) {
+                compressed += deflater.deflate(buffer);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return compressed < limit;
+    }
+
+    /**
+     * 获取压缩后写入指定输出流的输出流<br/>
+     * 关闭它只会写出剩余的压缩数据并释放压缩器，不会关闭被包装的流
+     *
+     * @param out   被包装的输出流
+     * @param level 压缩级别
+     * @return 压缩输出流
+     */
+    public static OutputStream newDeflaterStream(OutputStream out, int level) {
+        final Deflater deflater = new Deflater(level);
+
+        return new DeflaterOutputStream(out, deflater, 8192) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) return;
+                closed = true;
+
+                try {
+                    finish();
+                    flush();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * 获取读取时解压指定输入流的输入流，关闭它会同时关闭被包装的流
+     *
+     * @param in 被包装的输入流，内容是 {@link #newDeflaterStream} 写出的压缩数据
+     * @return 解压输入流
+     */
+    public static InputStream newInflaterStream(InputStream in) {
+        return new InflaterInputStream(in, new Inflater(), 8192) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+}
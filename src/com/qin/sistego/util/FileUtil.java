@@ -3,7 +3,12 @@ package com.qin.sistego.util;
 import com.qin.sistego.exception.FileOperationException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.Date;
 
 public class FileUtil {
 
@@ -20,6 +25,29 @@ public class FileUtil {
         return name.substring(name.lastIndexOf(".") + 1, name.length());
     }
 
+    /**
+     * 生成隐写输出的文件路径：原文件名 + "_" + 时间（yy-MM-dd_HHmmss）+ 原后缀名<br/>
+     * 同一秒内对同一图片多次隐写时依次追加 "_1"、"_2" 等序号。返回前会创建一个空文件占用该路径，
+     * 所以并发调用时也不会得到相同的路径
+     *
+     * @param image 原图片路径
+     * @return 输出的文件路径
+     */
+    public static String getOutputPath(String image) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yy-MM-dd_HHmmss");
+        String suffix = getSuffix(image);
+        String prefix = image.substring(0, image.lastIndexOf(".")) + "_" + dateFormat.format(new Date());
+
+        try {
+            for (int i = 0; ; i++) {
+                String output = prefix + (i == 0 ? "" : "_" + i) + "." + suffix;
+                if (new File(output).createNewFile()) return output;
+            }
+        } catch (IOException e) {
+            throw new FileOperationException("创建输出文件时出错");
+        }
+    }
+
     /**
      * 将文件转化为 byte 数组
      *
@@ -85,6 +113,24 @@ public class FileUtil {
         return ByteUtil.concatBytes(fileNameLengthBytes, fileNameBytes, fileLengthBytes, fileBytes);
     }
 
+    /**
+     * 生成 <code>file2InfoBytes</code> 格式中位于文件内容之前的部分，文件名和文件内容的长度由调用者给出<br/>
+     * 此方法用于隐藏来自输入流、而不是来自磁盘文件的内容
+     *
+     * @param fileName 文件名
+     * @param length   文件内容的字节数
+     * @return 文件信息头部的 byte 数组
+     */
+    public static byte[] infoHeaderBytes(String fileName, long length) {
+        if (length < 0 || length > Integer.MAX_VALUE) throw new FileOperationException("文件大小不应超过 " + Integer.MAX_VALUE + " 字节");
+
+        byte[] fileNameBytes = fileName.getBytes();
+        byte[] fileNameLengthBytes = ByteUtil.int2Bytes(fileNameBytes.length);
+        byte[] fileLengthBytes = ByteUtil.int2Bytes((int) length);
+
+        return ByteUtil.concatBytes(fileNameLengthBytes, fileNameBytes, fileLengthBytes);
+    }
+
     /**
      * 此方法用于获取 <code>file2InfoBytes</code> 方法隐藏的文件名
      *
@@ -131,33 +177,279 @@ public class FileUtil {
      * @param dest 复制的文件的位置
      */
     public static void copyFile(String src, String dest) {
-        BufferedInputStream bis = null;
-        BufferedOutputStream bos = null;
+        FileInputStream fis = null;
+        FileOutputStream fos = null;
 
         try {
-            bis = new BufferedInputStream(new FileInputStream(src));
-            bos = new BufferedOutputStream(new FileOutputStream(dest));
+            fis = new FileInputStream(src);
+            fos = new FileOutputStream(dest);
 
-            int data = bis.read();
-            while (data != -1) {
-                bos.write(data);
-                data = bis.read();
-            }
+            transferFully(fis.getChannel(), fos.getChannel());
         } catch (FileNotFoundException e) {
             throw new FileOperationException("没有找到指定的文件");
         } catch (IOException e) {
             throw new FileOperationException("复制文件时出错");
         } finally {
-            if (bis != null) {
-                try {
-                    bis.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            closeQuietly(fis, fos);
+        }
+    }
+
+    /**
+     * 将源文件通道的全部内容传输到目标通道的当前位置<br/>
+     * 传输由 <code>FileChannel.transferTo</code> 完成，数据不经过 Java 堆
+     *
+     * @param src  源文件通道
+     * @param dest 目标通道
+     * @return 传输的字节数
+     * @throws IOException 传输时出错、源文件在传输过程中被截短，或目标通道不再接收数据
+     */
+    public static long transferFully(FileChannel src, WritableByteChannel dest) throws IOException {
+        long size = src.size();
+        transferFully(src, 0, size, dest);
+
+        return size;
+    }
+
+    /**
+     * 将源文件通道中指定区域的内容传输到目标通道的当前位置
+     *
+     * @param src      源文件通道
+     * @param position 区域的起始位置
+     * @param count    区域的字节数
+     * @param dest     目标通道
+     * @throws IOException 传输时出错、源文件长度不足，或目标通道不再接收数据
+     */
+    public static void transferFully(FileChannel src, long position, long count, WritableByteChannel dest) throws IOException {
+        long end = position + count;
+
+        while (position < end) {
+            long transferred = src.transferTo(position, end - position, dest);
+            if (transferred <= 0) {
+                // 没有传输任何数据时不再重试：源文件已经读完，或目标通道（例如非阻塞的通道）没有接收数据
+                if (position >= src.size()) throw new EOFException("文件长度不足");
+                throw new IOException("目标通道没有接收数据");
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * 从文件通道的指定位置读取定长的 byte 数组，不改变通道的当前位置
+     *
+     * @param channel  文件通道
+     * @param position 读取的起始位置
+     * @param length   读取的字节数
+     * @return 读取到的 byte 数组
+     * @throws IOException 读取时出错或文件长度不足
+     */
+    public static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException("文件长度不足");
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * 从输入流中读取定长的 byte 数组
+     *
+     * @param in     输入流
+     * @param length 读取的字节数
+     * @return 读取到的 byte 数组
+     * @throws IOException 读取时出错或输入流的长度不足
+     */
+    public static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        new DataInputStream(in).readFully(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * 获取一个只读取文件通道中指定区域的输入流，读取时不改变通道的当前位置
+     *
+     * @param channel  文件通道
+     * @param position 区域的起始位置
+     * @param length   区域的字节数
+     * @return 输入流
+     */
+    public static InputStream newInputStream(final FileChannel channel, final long position, final long length) {
+        return new InputStream() {
+            private long offset = position;
+            private final long end = position + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (offset >= end) return -1;
+
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, end - offset));
+                int read = channel.read(buffer, offset);
+                if (read < 0) return -1;
+                offset += read;
+
+                return read;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(end - offset, Integer.MAX_VALUE);
+            }
+        };
+    }
+
+    /**
+     * 获取一个读取缓冲区中 position 到 limit 之间内容的输入流，读取时不改变缓冲区的 position
+     *
+     * @param buffer 缓冲区，可以是直接缓冲区或 <code>MappedByteBuffer</code>
+     * @return 输入流
+     */
+    public static InputStream newInputStream(ByteBuffer buffer) {
+        final ByteBuffer source = buffer.duplicate();
+
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) return 0;
+                if (!source.hasRemaining()) return -1;
+
+                int n = Math.min(len, source.remaining());
+                source.get(b, off, n);
+
+                return n;
+            }
+
+            @Override
+            public long skip(long n) {
+                int skipped = (int) Math.max(Math.min(n, source.remaining()), 0);
+                source.position(source.position() + skipped);
+
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return source.remaining();
+            }
+        };
+    }
+
+    /**
+     * 获取一个最多读取被包装的输入流中 length 个字节的输入流，不会读取之后的内容；关闭它时不关闭被包装的流
+     *
+     * @param in     被包装的输入流
+     * @param length 最多读取的字节数
+     * @return 输入流
+     */
+    public static InputStream newLimitedInputStream(final InputStream in, final long length) {
+        return new InputStream() {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) return -1;
+
+                int b = in.read();
+                if (b != -1) remaining--;
+                return b;
             }
-            if (bos != null) {
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                if (remaining <= 0) return -1;
+
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) remaining -= n;
+                return n;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(in.available(), remaining);
+            }
+        };
+    }
+
+    /**
+     * 将 byte 数组完整地写入通道的当前位置
+     *
+     * @param bytes 需要写入的 byte 数组
+     * @param dest  目标通道
+     * @throws IOException 写入时出错
+     */
+    public static void writeFully(byte[] bytes, WritableByteChannel dest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        while (buffer.hasRemaining()) {
+            dest.write(buffer);
+        }
+    }
+
+    /**
+     * 使用固定大小的缓冲区将输入流的全部内容复制到输出流
+     *
+     * @param in  输入流
+     * @param out 输出流
+     * @return 复制的字节数
+     * @throws IOException 复制时出错
+     */
+    public static long copyStream(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        long count = 0;
+        int length;
+
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+            count += length;
+        }
+
+        return count;
+    }
+
+    /**
+     * 从输入流中复制指定数量的字节到输出流
+     *
+     * @param in    输入流
+     * @param out   输出流
+     * @param count 需要复制的字节数
+     * @throws IOException 复制时出错或输入流的长度不足
+     */
+    public static void copyStream(InputStream in, OutputStream out, long count) throws IOException {
+        byte[] buffer = new byte[8192];
+
+        while (count > 0) {
+            int length = in.read(buffer, 0, (int) Math.min(buffer.length, count));
+            if (length == -1) throw new EOFException("输入流长度不足");
+            out.write(buffer, 0, length);
+            count -= length;
+        }
+    }
+
+    /**
+     * 关闭资源，关闭时出现的异常只打印而不抛出
+     *
+     * @param closeables 需要关闭的资源，可以为 null
+     */
+    public static void closeQuietly(Closeable... closeables) {
+        for (Closeable closeable : closeables) {
+            if (closeable != null) {
                 try {
-                    bos.close();
+                    closeable.close();
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
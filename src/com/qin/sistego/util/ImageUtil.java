@@ -3,14 +3,42 @@ package com.qin.sistego.util;
 import com.qin.sistego.exception.FileOperationException;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.FileImageOutputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class ImageUtil {
 
-    public static byte[] pixels2Bytes(String imagePath) {
+    private static final int TRANSPOSE_BLOCK = 64; // 行列转换时每次处理的行数，使读取的数据保留在缓存中
+
+    /**
+     * 读取并解码图片文件
+     *
+     * @param imagePath 图片文件路径
+     * @return 解码后的图片
+     */
+    public static BufferedImage readImage(String imagePath) {
         BufferedImage image;
 
         try {
@@ -18,42 +46,842 @@ public class ImageUtil {
         } catch (IOException e) {
             throw new FileOperationException("读取图片文件时出错");
         }
+        if (image == null) throw new FileOperationException("不支持的图片格式");
+
+        return image;
+    }
 
-        int size = image.getWidth() * image.getHeight();
-        ByteBuffer buffer = ByteBuffer.allocate(size * 4);
+    /**
+     * 解码内存中的图片文件内容，不读写任何文件（包括 ImageIO 的磁盘缓存）
+     *
+     * @param image 图片文件的内容，读取 position 到 limit 之间的字节，不改变 position
+     * @return 解码后的图片
+     */
+    public static BufferedImage decodeImage(ByteBuffer image) {
+        BufferedImage decoded;
 
-        for (int x = image.getMinX(); x < image.getWidth(); x++) {
-            for (int y = image.getMinY(); y < image.getHeight(); y++) {
-                int data = image.getRGB(x, y);
-                buffer.putInt(data);
-            }
+        try {
+            // 直接传入输入流时 ImageIO 可能使用磁盘缓存，所以显式使用内存缓存；ImageIO.read 会关闭它
+            decoded = ImageIO.read(new MemoryCacheImageInputStream(FileUtil.newInputStream(image)));
+        } catch (IOException e) {
+            throw new FileOperationException("解码图片时出错");
         }
+        if (decoded == null) throw new FileOperationException("不支持的图片格式");
 
-        return buffer.array();
+        return decoded;
     }
 
-    public static void bytes2Pixels(String imagePath, byte[] bytes) {
-        int[] ints = ByteUtil.bytes2Ints(bytes);
-        String suffix = FileUtil.getSuffix(imagePath).toLowerCase();
-        BufferedImage img;
+    /**
+     * 只解码列优先顺序中的前 count 个像素所在的区域，即左侧的若干列。PNG 等逐行存储的格式只需解码到区域的最后一行，
+     * 用于读取头部等只位于图片最前面的信息
+     *
+     * @param imagePath 图片路径
+     * @param count     需要的像素数
+     * @return 区域的图片，坐标从 (0, 0) 开始，列优先顺序的前 count 个像素与原图片相同
+     */
+    public static BufferedImage readLeadingPixels(String imagePath, int count) {
+        ImageInputStream iis = null;
+        ImageReader reader = null;
 
         try {
-            img = ImageIO.read(new File(imagePath));
+            iis = openImageStream(imagePath);
+            reader = createReader(iis);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int columns = (int) Math.min(width, ((long) count + height - 1) / height);
+
+            int rows = Math.min(height, Math.max(count, 1));
+
+            return readRegion(reader, Math.max(columns, 1), rows);
         } catch (IOException e) {
-            throw new FileOperationException("将数据写入图片文件时出错");
+            throw new FileOperationException("读取图片文件时出错");
+        } finally {
+            if (reader != null) reader.dispose();
+            FileUtil.closeQuietly(iis);
+        }
+    }
+
+    /**
+     * 只解码行优先顺序中的前 count 个样本（每个像素的样本数为解码后的波段数）所在的行，用于读取按原生样本布局写入的头部
+     *
+     * @param imagePath 图片路径
+     * @param count     需要的样本数
+     * @return 区域的图片，宽度与原图片相同，从第 0 行开始
+     */
+    public static BufferedImage readLeadingSamples(String imagePath, int count) {
+        ImageInputStream iis = null;
+        ImageReader reader = null;
+
+        try {
+            iis = openImageStream(imagePath);
+            reader = createReader(iis);
+            int width = reader.getWidth(0);
+            long rowSamples = (long) width * reader.getImageTypes(0).next().getNumBands();
+            int rows = (int) Math.min(reader.getHeight(0), Math.max((count + rowSamples - 1) / rowSamples, 1));
+
+            return readRegion(reader, width, rows);
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片文件时出错");
+        } finally {
+            if (reader != null) reader.dispose();
+            FileUtil.closeQuietly(iis);
+        }
+    }
+
+    private static BufferedImage readRegion(ImageReader reader, int columns, int rows) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, 0, columns, rows));
+        // 部分解码器（如 PNG）即使指定了区域也会解压区域之后的所有行，区域中的行全部解码后就中止
+        reader.addIIOReadUpdateListener(new RegionAborter(rows));
+
+        return reader.read(0, param);
+    }
+
+    /**
+     * 只读取图片文件的头部获取宽度和高度，不解码像素。PNG、BMP 等格式只需读取文件开头的几十个字节
+     *
+     * @param imagePath 图片路径
+     * @return 图片的宽度和高度
+     */
+    public static Dimension readSize(String imagePath) {
+        ImageInputStream iis = null;
+        ImageReader reader = null;
+
+        try {
+            iis = openImageStream(imagePath);
+            reader = createReader(iis);
+
+            return new Dimension(reader.getWidth(0), reader.getHeight(0));
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片文件时出错");
+        } finally {
+            if (reader != null) reader.dispose();
+            FileUtil.closeQuietly(iis);
+        }
+    }
+
+    /**
+     * 只读取图片文件的头部，获取解码时使用的图片类型（颜色模型和样本模型），不解码像素<br/>
+     * 返回解码器提供的第一个类型，<code>readImage</code> 解码得到的图片就是这个类型
+     *
+     * @param imagePath 图片路径
+     * @return 图片类型
+     */
+    public static ImageTypeSpecifier readImageType(String imagePath) {
+        ImageInputStream iis = null;
+        ImageReader reader = null;
+
+        try {
+            iis = openImageStream(imagePath);
+            reader = createReader(iis);
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            if (!types.hasNext()) throw new FileOperationException("不支持的图片格式");
+
+            return types.next();
+        } catch (IOException e) {
+            throw new FileOperationException("读取图片文件时出错");
+        } finally {
+            if (reader != null) reader.dispose();
+            FileUtil.closeQuietly(iis);
         }
+    }
+
+    private static ImageInputStream openImageStream(String imagePath) throws IOException {
+        File file = new File(imagePath);
+        if (!file.isFile()) throw new FileOperationException("没有找到指定的文件");
+
+        return ImageIO.createImageInputStream(file);
+    }
+
+    /**
+     * 根据文件的内容选择解码器，只读取头部，不解码像素
+     */
+    private static ImageReader createReader(ImageInputStream iis) {
+        Iterator<ImageReader> readers = iis == null ? null : ImageIO.getImageReaders(iis);
+        if (readers == null || !readers.hasNext()) throw new FileOperationException("不支持的图片格式");
+
+        ImageReader reader = readers.next();
+        reader.setInput(iis, true, true);
+
+        return reader;
+    }
+
+    /**
+     * 将图片编码后写入文件，编码格式由文件的后缀名决定<br/>
+     * 直接写入已有的文件而不是删除后重新创建，{@link FileUtil#getOutputPath} 占用的路径在写入时不会被其他线程取得；
+     * 编码失败时删除该文件，不保留不完整的输出
+     *
+     * @param image     图片
+     * @param imagePath 输出的文件路径
+     */
+    public static void writeImage(BufferedImage image, String imagePath) {
+        RandomAccessFile file = null;
+        boolean completed = false;
 
-        for (int x = img.getMinX(), i = 0; x < img.getWidth(); x++) {
-            for (int y = img.getMinY(); y < img.getHeight(); y++) {
-                img.setRGB(x, y, ints[i]);
-                i++;
+        try {
+            file = new RandomAccessFile(imagePath, "rw");
+            file.setLength(0);
+            writeImage(image, FileUtil.getSuffix(imagePath), new FileImageOutputStream(file)); // 写入后关闭文件
+            completed = true;
+        } catch (IOException e) {
+            throw new FileOperationException("将数据写入图片文件时出错");
+        } finally {
+            if (!completed) {
+                FileUtil.closeQuietly(file);
+                new File(imagePath).delete();
             }
         }
+    }
 
+    /**
+     * 将图片编码后写入输出流，写入后关闭它
+     *
+     * @param image  图片
+     * @param format 编码格式，如 "png"、"bmp"
+     * @param out    输出流，例如写入文件的 <code>FileImageOutputStream</code>
+     */
+    public static void writeImage(BufferedImage image, String format, ImageOutputStream out) {
         try {
-            ImageIO.write(img, suffix, new File(imagePath));
+            if (!ImageIO.write(image, format.toLowerCase(), out)) throw new FileOperationException("不支持的图片格式");
         } catch (IOException e) {
             throw new FileOperationException("将数据写入图片文件时出错");
+        } finally {
+            FileUtil.closeQuietly(out);
+        }
+    }
+
+    /**
+     * 将图片编码为指定格式的文件内容，只在内存中进行，不读写任何文件
+     *
+     * @param image  图片
+     * @param format 编码格式，如 "png"、"bmp"
+     * @return 编码后的文件内容
+     */
+    public static byte[] encodeImage(BufferedImage image, String format) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+
+        try {
+            if (!ImageIO.write(image, format.toLowerCase(), ios)) throw new FileOperationException("不支持的图片格式");
+            ios.flush();
+        } catch (IOException e) {
+            throw new FileOperationException("编码图片时出错");
+        } finally {
+            FileUtil.closeQuietly(ios);
+        }
+
+        return baos.toByteArray();
+    }
+
+    public static byte[] pixels2Bytes(String imagePath) {
+        return pixels2Bytes(readImage(imagePath));
+    }
+
+    /**
+     * 将图片的像素按列优先的顺序转化为 byte 数组，每个像素占 4 个字节（ARGB）
+     *
+     * @param image 图片
+     * @return 转换后的 byte 数组
+     */
+    public static byte[] pixels2Bytes(BufferedImage image) {
+        return ByteUtil.ints2Bytes(pixels2Ints(image));
+    }
+
+    public static void bytes2Pixels(String imagePath, byte[] bytes) {
+        BufferedImage img = readImage(imagePath);
+        bytes2Pixels(img, bytes);
+        writeImage(img, imagePath);
+    }
+
+    /**
+     * 将 <code>pixels2Bytes</code> 格式（列优先、每个像素 4 个字节）的 byte 数组写回图片的像素
+     *
+     * @param image 图片
+     * @param bytes 像素数据
+     */
+    public static void bytes2Pixels(BufferedImage image, byte[] bytes) {
+        ints2Pixels(image, ByteUtil.bytes2Ints(bytes));
+    }
+
+    /**
+     * 将图片的像素（ARGB）按列优先的顺序转化为 int 数组，这是 LSB 隐写使用的像素顺序<br/>
+     * 像素按行批量读取，再分块转换为列优先的顺序
+     *
+     * @param image 图片
+     * @return 像素数组，第 y 行第 x 列的像素位于 <code>x * height + y</code>
+     */
+    public static int[] pixels2Ints(BufferedImage image) {
+        return pixels2Ints(image, null);
+    }
+
+    /**
+     * 将图片的像素（ARGB）按列优先的顺序转化为 int 数组，图片按行分为多个条带在线程池中并行转换
+     *
+     * @param image 图片
+     * @param pool  执行转换的线程池，为 null 时在当前线程中转换
+     * @return 像素数组，第 y 行第 x 列的像素位于 <code>x * height + y</code>
+     */
+    public static int[] pixels2Ints(BufferedImage image, ForkJoinPool pool) {
+        int[] columns = new int[image.getWidth() * image.getHeight()];
+        forEachRowBand(image, columns, false, pool);
+
+        return columns;
+    }
+
+    /**
+     * 按列优先的顺序读取图片中的一段像素（ARGB），结果与 <code>pixels2Ints(image)</code> 中对应的部分相同<br/>
+     * 只读取需要的像素，不产生与整个图片等大的中间数组
+     *
+     * @param image 图片
+     * @param from  第一个像素在列优先顺序中的位置
+     * @param out   保存像素的数组
+     * @param off   保存的起始位置
+     * @param count 读取的像素数
+     */
+    public static void pixels2Ints(BufferedImage image, int from, int[] out, int off, int count) {
+        int width = image.getWidth(), height = image.getHeight();
+        if (from < 0 || count < 0 || (long) from + count > (long) width * height)
+            throw new IndexOutOfBoundsException("读取的像素超出了图片的范围");
+
+        boolean direct = isRasterDirect(image);
+        int x = from / height, y = from % height;
+
+        while (count > 0) {
+            int n = Math.min(count, height - y);
+            if (direct) readColumn(image, x, y, n, out, off);
+            else image.getRGB(x, y, 1, n, out, off, 1);
+            off += n;
+            count -= n;
+            x++;
+            y = 0;
+        }
+    }
+
+    /**
+     * 按列优先的顺序将一段像素（ARGB）写回图片，是 <code>pixels2Ints(image, from, out, off, count)</code> 的逆操作<br/>
+     * 只写入这一段像素，不产生与整个图片等大的中间数组
+     *
+     * @param image 图片
+     * @param from  第一个像素在列优先顺序中的位置
+     * @param in    像素数组
+     * @param off   像素的起始位置
+     * @param count 写入的像素数
+     */
+    public static void ints2Pixels(BufferedImage image, int from, int[] in, int off, int count) {
+        int width = image.getWidth(), height = image.getHeight();
+        if (from < 0 || count < 0 || (long) from + count > (long) width * height)
+            throw new IndexOutOfBoundsException("写入的像素超出了图片的范围");
+
+        boolean direct = isRasterDirect(image);
+        int x = from / height, y = from % height;
+
+        while (count > 0) {
+            int n = Math.min(count, height - y);
+            if (direct) writeColumn(image, x, y, n, in, off);
+            else image.setRGB(x, y, 1, n, in, off, 1);
+            off += n;
+            count -= n;
+            x++;
+            y = 0;
+        }
+    }
+
+    /**
+     * 读取列优先顺序中任意位置的像素（ARGB），按密钥分散写入信息时使用
+     *
+     * @param image     图片
+     * @param positions 像素在列优先顺序中的位置，可以与 out 是同一个数组（读取后被像素覆盖）
+     * @param out       保存像素的数组，positions[off + i] 处的像素保存在 out[off + i]
+     * @param off       起始位置
+     * @param count     读取的像素数
+     */
+    public static void pixels2Ints(BufferedImage image, int[] positions, int[] out, int off, int count) {
+        int width = image.getWidth(), height = image.getHeight();
+        int end = off + count;
+
+        if (!isRasterDirect(image)) {
+            for (int i = off; i < end; i++) out[i] = image.getRGB(positions[i] / height, positions[i] % height);
+            return;
+        }
+
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    out[i] = data[positions[i] % height * width + positions[i] / height];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    out[i] = 0xff000000 | data[positions[i] % height * width + positions[i] / height];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    int j = (positions[i] % height * width + positions[i] / height) * 4;
+                    out[i] = ((data[j] & 0xff) << 24)
+                            | ((data[j + 3] & 0xff) << 16)
+                            | ((data[j + 2] & 0xff) << 8)
+                            | (data[j + 1] & 0xff);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    int j = (positions[i] % height * width + positions[i] / height) * 3;
+                    out[i] = 0xff000000
+                            | ((data[j + 2] & 0xff) << 16)
+                            | ((data[j + 1] & 0xff) << 8)
+                            | (data[j] & 0xff);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 写入列优先顺序中任意位置的像素（ARGB），是 <code>pixels2Ints(image, positions, out, off, count)</code> 的逆操作
+     *
+     * @param image     图片
+     * @param positions 像素在列优先顺序中的位置
+     * @param in        像素数组，in[off + i] 写入 positions[off + i] 处
+     * @param off       起始位置
+     * @param count     写入的像素数
+     */
+    public static void ints2Pixels(BufferedImage image, int[] positions, int[] in, int off, int count) {
+        int width = image.getWidth(), height = image.getHeight();
+        int end = off + count;
+
+        if (!isRasterDirect(image)) {
+            for (int i = off; i < end; i++) image.setRGB(positions[i] / height, positions[i] % height, in[i]);
+            return;
+        }
+
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    data[positions[i] % height * width + positions[i] / height] = in[i];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    data[positions[i] % height * width + positions[i] / height] = in[i] & 0xffffff;
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    int j = (positions[i] % height * width + positions[i] / height) * 4;
+                    int pixel = in[i];
+                    data[j] = (byte) (pixel >>> 24);
+                    data[j + 1] = (byte) pixel;
+                    data[j + 2] = (byte) (pixel >>> 8);
+                    data[j + 3] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) buffer).getData();
+                for (int i = off; i < end; i++) {
+                    int j = (positions[i] % height * width + positions[i] / height) * 3;
+                    int pixel = in[i];
+                    data[j] = (byte) pixel;
+                    data[j + 1] = (byte) (pixel >>> 8);
+                    data[j + 2] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 将 <code>pixels2Ints</code> 格式（列优先）的像素数组写回图片
+     *
+     * @param image   图片
+     * @param columns 像素数组
+     */
+    public static void ints2Pixels(BufferedImage image, int[] columns) {
+        ints2Pixels(image, columns, null);
+    }
+
+    /**
+     * 将 <code>pixels2Ints</code> 格式（列优先）的像素数组写回图片，图片按行分为多个条带在线程池中并行写入
+     *
+     * @param image   图片
+     * @param columns 像素数组
+     * @param pool    执行写入的线程池，为 null 时在当前线程中写入
+     */
+    public static void ints2Pixels(BufferedImage image, int[] columns, ForkJoinPool pool) {
+        if (columns.length != image.getWidth() * image.getHeight())
+            throw new IllegalArgumentException("像素数组的长度与图片的像素数不符");
+
+        forEachRowBand(image, columns, true, pool);
+    }
+
+    private static void forEachRowBand(BufferedImage image, int[] columns, boolean write, ForkJoinPool pool) {
+        if (pool == null) transposeRows(image, columns, 0, image.getHeight(), write);
+        else pool.invoke(new RowBandTask(image, columns, 0, image.getHeight(), write));
+    }
+
+    /**
+     * 在图片的 [fromY, toY) 行与列优先的像素数组之间转换，每次处理 {@link #TRANSPOSE_BLOCK} 行
+     */
+    private static void transposeRows(BufferedImage image, int[] columns, int fromY, int toY, boolean write) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] rows = new int[Math.min(TRANSPOSE_BLOCK, toY - fromY) * width];
+
+        for (int blockY = fromY; blockY < toY; blockY += TRANSPOSE_BLOCK) {
+            int blockRows = Math.min(TRANSPOSE_BLOCK, toY - blockY);
+            if (!write) getPixels(image, blockY, blockRows, rows);
+            for (int x = 0; x < width; x++) {
+                for (int r = 0, i = x * height + blockY; r < blockRows; r++, i++) {
+                    if (write) rows[r * width + x] = columns[i];
+                    else columns[i] = rows[r * width + x];
+                }
+            }
+            if (write) setPixels(image, blockY, blockRows, rows);
+        }
+    }
+
+    /**
+     * 按行将图片分为条带并行转换的任务，不同条带读写的像素互不重叠
+     */
+    private static class RowBandTask extends RecursiveAction {
+
+        private static final int MIN_BAND_PIXELS = 1 << 18;
+
+        private final BufferedImage image;
+        private final int[] columns;
+        private final int fromY;
+        private final int toY;
+        private final boolean write;
+
+        RowBandTask(BufferedImage image, int[] columns, int fromY, int toY, boolean write) {
+            this.image = image;
+            this.columns = columns;
+            this.fromY = fromY;
+            this.toY = toY;
+            this.write = write;
+        }
+
+        @Override
+        protected void compute() {
+            int rows = toY - fromY;
+            if (rows <= TRANSPOSE_BLOCK || (long) rows * image.getWidth() <= MIN_BAND_PIXELS) {
+                transposeRows(image, columns, fromY, toY, write);
+                return;
+            }
+
+            int middle = fromY + (rows / 2 + TRANSPOSE_BLOCK - 1) / TRANSPOSE_BLOCK * TRANSPOSE_BLOCK;
+            invokeAll(new RowBandTask(image, columns, fromY, middle, write),
+                    new RowBandTask(image, columns, middle, toY, write));
+        }
+    }
+
+    /**
+     * 按行优先的顺序批量读取图片的全部像素（ARGB），结果与逐个调用 <code>getRGB(x, y)</code> 相同<br/>
+     * 对于常见的 <code>TYPE_INT_ARGB</code>、<code>TYPE_INT_RGB</code>、<code>TYPE_4BYTE_ABGR</code>、
+     * <code>TYPE_3BYTE_BGR</code> 类型，直接读取底层的 <code>DataBuffer</code>，不经过 <code>ColorModel</code> 的转换
+     *
+     * @param image 图片
+     * @return 像素数组，第 y 行第 x 列的像素位于 <code>y * width + x</code>
+     */
+    public static int[] getPixels(BufferedImage image) {
+        int[] pixels = new int[image.getWidth() * image.getHeight()];
+        getPixels(image, 0, image.getHeight(), pixels);
+
+        return pixels;
+    }
+
+    /**
+     * 按行优先的顺序批量读取图片中从第 y 行开始的若干行像素（ARGB）
+     *
+     * @param image  图片
+     * @param y      第一行
+     * @param rows   行数
+     * @param pixels 保存像素的数组，第 y + r 行第 x 列的像素位于 <code>r * width + x</code>
+     */
+    public static void getPixels(BufferedImage image, int y, int rows, int[] pixels) {
+        int width = image.getWidth();
+        int size = width * rows;
+
+        if (!isRasterDirect(image)) {
+            image.getRGB(0, y, width, rows, pixels, 0, width);
+            return;
+        }
+
+        WritableRaster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                System.arraycopy(((DataBufferInt) raster.getDataBuffer()).getData(), y * width, pixels, 0, size);
+                break;
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width; i < size; i++, j++) {
+                    pixels[i] = 0xff000000 | data[j];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width * 4; i < size; i++, j += 4) {
+                    pixels[i] = ((data[j] & 0xff) << 24)
+                            | ((data[j + 3] & 0xff) << 16)
+                            | ((data[j + 2] & 0xff) << 8)
+                            | (data[j + 1] & 0xff);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width * 3; i < size; i++, j += 3) {
+                    pixels[i] = 0xff000000
+                            | ((data[j + 2] & 0xff) << 16)
+                            | ((data[j + 1] & 0xff) << 8)
+                            | (data[j] & 0xff);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 按行优先的顺序批量写入图片的全部像素（ARGB），结果与逐个调用 <code>setRGB(x, y, rgb)</code> 相同
+     *
+     * @param image  图片
+     * @param pixels 像素数组，格式与 <code>getPixels</code> 的返回值相同
+     */
+    public static void setPixels(BufferedImage image, int[] pixels) {
+        if (pixels.length != image.getWidth() * image.getHeight())
+            throw new IllegalArgumentException("像素数组的长度与图片的像素数不符");
+
+        setPixels(image, 0, image.getHeight(), pixels);
+    }
+
+    /**
+     * 按行优先的顺序批量写入图片中从第 y 行开始的若干行像素（ARGB）
+     *
+     * @param image  图片
+     * @param y      第一行
+     * @param rows   行数
+     * @param pixels 像素数组，格式与 <code>getPixels(image, y, rows, pixels)</code> 的结果相同
+     */
+    public static void setPixels(BufferedImage image, int y, int rows, int[] pixels) {
+        int width = image.getWidth();
+        int size = width * rows;
+
+        if (!isRasterDirect(image)) {
+            image.setRGB(0, y, width, rows, pixels, 0, width);
+            return;
+        }
+
+        WritableRaster raster = image.getRaster();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+                System.arraycopy(pixels, 0, ((DataBufferInt) raster.getDataBuffer()).getData(), y * width, size);
+                break;
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width; i < size; i++, j++) {
+                    data[j] = pixels[i] & 0xffffff;
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width * 4; i < size; i++, j += 4) {
+                    int pixel = pixels[i];
+                    data[j] = (byte) (pixel >>> 24);
+                    data[j + 1] = (byte) pixel;
+                    data[j + 2] = (byte) (pixel >>> 8);
+                    data[j + 3] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width * 3; i < size; i++, j += 3) {
+                    int pixel = pixels[i];
+                    data[j] = (byte) pixel;
+                    data[j + 1] = (byte) (pixel >>> 8);
+                    data[j + 2] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 直接从 <code>DataBuffer</code> 读取第 x 列从第 y 行开始的 n 个像素
+     */
+    private static void readColumn(BufferedImage image, int x, int y, int n, int[] out, int off) {
+        int width = image.getWidth();
+        WritableRaster raster = image.getRaster();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width + x; i < n; i++, j += width) {
+                    out[off + i] = data[j];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width + x; i < n; i++, j += width) {
+                    out[off + i] = 0xff000000 | data[j];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = (y * width + x) * 4; i < n; i++, j += width * 4) {
+                    out[off + i] = ((data[j] & 0xff) << 24)
+                            | ((data[j + 3] & 0xff) << 16)
+                            | ((data[j + 2] & 0xff) << 8)
+                            | (data[j + 1] & 0xff);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = (y * width + x) * 3; i < n; i++, j += width * 3) {
+                    out[off + i] = 0xff000000
+                            | ((data[j + 2] & 0xff) << 16)
+                            | ((data[j + 1] & 0xff) << 8)
+                            | (data[j] & 0xff);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 直接向 <code>DataBuffer</code> 写入第 x 列从第 y 行开始的 n 个像素
+     */
+    private static void writeColumn(BufferedImage image, int x, int y, int n, int[] in, int off) {
+        int width = image.getWidth();
+        WritableRaster raster = image.getRaster();
+
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width + x; i < n; i++, j += width) {
+                    data[j] = in[off + i];
+                }
+                break;
+            }
+            case BufferedImage.TYPE_INT_RGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                for (int i = 0, j = y * width + x; i < n; i++, j += width) {
+                    data[j] = in[off + i] & 0xffffff;
+                }
+                break;
+            }
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = (y * width + x) * 4; i < n; i++, j += width * 4) {
+                    int pixel = in[off + i];
+                    data[j] = (byte) (pixel >>> 24);
+                    data[j + 1] = (byte) pixel;
+                    data[j + 2] = (byte) (pixel >>> 8);
+                    data[j + 3] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                for (int i = 0, j = (y * width + x) * 3; i < n; i++, j += width * 3) {
+                    int pixel = in[off + i];
+                    data[j] = (byte) pixel;
+                    data[j + 1] = (byte) (pixel >>> 8);
+                    data[j + 2] = (byte) (pixel >>> 16);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * 判断能否直接访问图片底层的 <code>DataBuffer</code>：图片是已知的类型，且像素数据从缓冲区的开头起紧密排列
+     */
+    private static boolean isRasterDirect(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+                break;
+            default:
+                return false;
+        }
+
+        WritableRaster raster = image.getRaster();
+        int pixelSize = image.getType() == BufferedImage.TYPE_4BYTE_ABGR ? 4
+                : image.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3 : 1;
+
+        return raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getNumBanks() == 1 && raster.getDataBuffer().getOffset() == 0
+                && raster.getDataBuffer().getSize() == image.getWidth() * image.getHeight() * pixelSize;
+    }
+
+    /**
+     * 在区域中的所有行都已解码后中止读取<br/>
+     * 只统计全分辨率的更新，隔行扫描的 PNG、渐进式的 JPEG 等分多遍解码的图片不会被提前中止
+     */
+    private static class RegionAborter implements IIOReadUpdateListener {
+
+        private final int rows;
+        private int decoded;
+        private boolean multiPass;
+
+        RegionAborter(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+            if (pass > minPass || periodX != 1 || periodY != 1) multiPass = true;
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width, int height,
+                                int periodX, int periodY, int[] bands) {
+            if (multiPass || periodX != 1 || periodY != 1) return;
+
+            decoded += height;
+            if (decoded >= rows) source.abort();
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass, int maxPass,
+                                         int minX, int minY, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY, int width, int height,
+                                    int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
         }
     }
 }
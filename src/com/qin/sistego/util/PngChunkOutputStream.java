@@ -0,0 +1,64 @@
+package com.qin.sistego.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * 把写入的数据按最大 {@link #CHUNK_BYTES} 个字节分成多个指定类型的 PNG 块（长度 + 类型 + 数据 + CRC-32）
+ */
+class PngChunkOutputStream extends OutputStream {
+
+    static final int CHUNK_BYTES = 64 * 1024; // 每个块的最大字节数
+
+    private final OutputStream out;
+    private final String type;
+    private final byte[] buffer = new byte[CHUNK_BYTES];
+    private int count;
+
+    PngChunkOutputStream(OutputStream out, String type) {
+        this.out = out;
+        this.type = type;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) flush();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) flush();
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 把缓冲区中的数据写成一个块，缓冲区为空时不写
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count == 0) return;
+
+        writeChunk(out, type, buffer, count);
+        count = 0;
+    }
+
+    static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        out.write(ByteUtil.int2Bytes(length));
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.write(ByteUtil.int2Bytes((int) crc.getValue()));
+    }
+}
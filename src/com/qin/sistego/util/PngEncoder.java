@@ -0,0 +1,399 @@
+package com.qin.sistego.util;
+
+import com.qin.sistego.exception.FileOperationException;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 可调参数的 PNG 编码器，用于代替 <code>ImageIO.write</code> 输出 LSB 隐写后的图片<br/>
+ * 可以设置 Deflate 压缩级别和行过滤方式，并可以像 pigz 一样把图片按行分块、在多个线程中分别压缩：
+ * 每块以 <code>SYNC_FLUSH</code> 结束、以前一块最后 32K 的数据作为字典，拼接后仍是一个完整的 zlib 数据流，
+ * 输出的是任何程序都能读取的标准 PNG<br/>
+ * 只支持 8 位的 RGB、ARGB 图片（<code>TYPE_INT_ARGB</code>、<code>TYPE_INT_RGB</code>、<code>TYPE_4BYTE_ABGR</code>、
+ * <code>TYPE_3BYTE_BGR</code>），其他类型由 {@link #supports} 判断后交给 <code>ImageIO</code>
+ */
+public class PngEncoder {
+
+    /**
+     * 行过滤方式，<code>ADAPTIVE</code> 对每行尝试所有方式，选择差值绝对值之和最小的一种
+     */
+    public enum Filter {
+        NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int BLOCK_BYTES = 128 * 1024; // 并行压缩时每块的原始数据字节数
+    private static final int DICTIONARY_BYTES = 32 * 1024; // Deflate 的窗口大小
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private Filter filter = Filter.ADAPTIVE;
+
+    /**
+     * @return Deflate 压缩级别
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * 设置 Deflate 压缩级别。0 只存储不压缩，速度最快但文件最大；1 是最快的压缩，适合对延迟敏感的场景
+     *
+     * @param level 0 到 9，或 -1（Deflate 的默认级别），默认为 -1
+     * @return 当前编码器
+     */
+    public PngEncoder setLevel(int level) {
+        CompressUtil.checkLevel(level);
+        this.level = level;
+
+        return this;
+    }
+
+    /**
+     * @return 行过滤方式
+     */
+    public Filter getFilter() {
+        return filter;
+    }
+
+    /**
+     * 设置行过滤方式。<code>ADAPTIVE</code> 压缩率最好，<code>NONE</code> 最快，与级别 0、1 配合使用
+     *
+     * @param filter 行过滤方式，默认为 <code>ADAPTIVE</code>
+     * @return 当前编码器
+     */
+    public PngEncoder setFilter(Filter filter) {
+        if (filter == null) throw new IllegalArgumentException("行过滤方式不能为 null");
+        this.filter = filter;
+
+        return this;
+    }
+
+    /**
+     * @return 是否支持编码该图片
+     */
+    public static boolean supports(BufferedImage image) {
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 将图片编码为 PNG 后写入文件
+     *
+     * @param image     图片
+     * @param imagePath 输出的文件路径
+     * @param pool      并行压缩使用的线程池，为 null 时在当前线程中压缩
+     */
+    public void write(BufferedImage image, String imagePath, ForkJoinPool pool) {
+        OutputStream out = null;
+
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(imagePath), PngChunkOutputStream.CHUNK_BYTES);
+            encode(image, out, pool);
+            out.flush();
+        } catch (IOException e) {
+            throw new FileOperationException("将数据写入图片文件时出错");
+        } finally {
+            FileUtil.closeQuietly(out);
+        }
+    }
+
+    /**
+     * 将图片编码为 PNG 后写入输出流
+     *
+     * @param image 图片
+     * @param out   输出流，不会关闭它
+     * @param pool  并行压缩使用的线程池，为 null 时在当前线程中逐行过滤、压缩，不会产生与图片等大的中间数组
+     * @throws IOException 写入时出错
+     */
+    public void encode(BufferedImage image, OutputStream out, ForkJoinPool pool) throws IOException {
+        if (!supports(image)) throw new IllegalArgumentException("不支持的图片类型：" + image.getType());
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha();
+        int bpp = alpha ? 4 : 3;
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(8); // 每个样本 8 位
+        header.writeByte(alpha ? 6 : 2); // RGBA 或 RGB
+        header.writeByte(0); // Deflate
+        header.writeByte(0); // 自适应过滤
+        header.writeByte(0); // 不隔行扫描
+
+        out.write(SIGNATURE);
+        PngChunkOutputStream.writeChunk(out, "IHDR", headerBytes.toByteArray(), 13);
+
+        PngChunkOutputStream idat = new PngChunkOutputStream(out, "IDAT");
+        long rowBytes = (long) width * bpp + 1;
+        if (pool == null || rowBytes * height <= BLOCK_BYTES) {
+            Deflater deflater = new Deflater(level);
+            try {
+                DeflaterOutputStream zlib = new DeflaterOutputStream(idat, deflater, PngChunkOutputStream.CHUNK_BYTES);
+                new RowFilter(image, bpp, filter).filter(0, height, zlib);
+                zlib.finish();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            compressParallel(image, bpp, (int) rowBytes, idat, pool);
+        }
+        idat.flush();
+
+        PngChunkOutputStream.writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    /**
+     * 按行分块并行压缩：各块的原始数据是连续的，压缩结果按顺序拼接，前后加上 zlib 的头部和整个数据的 Adler-32
+     */
+    private void compressParallel(BufferedImage image, int bpp, int rowBytes, OutputStream idat, ForkJoinPool pool)
+            throws IOException {
+        int height = image.getHeight();
+        int blockRows = Math.max(BLOCK_BYTES / rowBytes, 1);
+        List<ForkJoinTask<Block>> tasks = new ArrayList<ForkJoinTask<Block>>();
+
+        for (int y = 0; y < height; y += blockRows) {
+            tasks.add(pool.submit(new BlockTask(image, bpp, y, Math.min(y + blockRows, height), rowBytes)));
+        }
+
+        idat.write(0x78);
+        idat.write(zlibFlags(level));
+        long adler = 1;
+        for (ForkJoinTask<Block> task : tasks) {
+            Block block = task.join();
+            idat.write(block.compressed, 0, block.length);
+            adler = combineAdler32(adler, block.adler, block.rawLength);
+        }
+        idat.write(new byte[]{(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler});
+    }
+
+    /**
+     * zlib 头部的第二个字节：压缩级别的提示，并使两个字节组成的数是 31 的倍数
+     */
+    private static int zlibFlags(int level) {
+        if (level == 0 || level == 1) return 0x01;
+        if (level >= 2 && level <= 5) return 0x5e;
+        if (level >= 7) return 0xda;
+
+        return 0x9c;
+    }
+
+    /**
+     * 由前后两段数据各自的 Adler-32 计算拼接后的 Adler-32，与 zlib 的 <code>adler32_combine</code> 相同
+     *
+     * @param adler1 前一段的 Adler-32
+     * @param adler2 后一段的 Adler-32
+     * @param len2   后一段的字节数
+     */
+    private static long combineAdler32(long adler1, long adler2, long len2) {
+        final long base = 65521;
+        long rem = len2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = rem * sum1 % base;
+
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += (adler1 >>> 16 & 0xffff) + (adler2 >>> 16 & 0xffff) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= base << 1) sum2 -= base << 1;
+        if (sum2 >= base) sum2 -= base;
+
+        return sum1 | sum2 << 16;
+    }
+
+    /**
+     * 一块压缩后的数据，以及压缩前的字节数和 Adler-32
+     */
+    private static class Block {
+
+        byte[] compressed;
+        int length;
+        long rawLength;
+        long adler;
+    }
+
+    /**
+     * 过滤并压缩一块连续的行。除第一块外，先过滤前一块最后的行作为字典，使分块压缩的压缩率接近整体压缩
+     */
+    private class BlockTask extends RecursiveTask<Block> {
+
+        private final BufferedImage image;
+        private final int bpp;
+        private final int fromRow;
+        private final int toRow;
+        private final int rowBytes;
+
+        BlockTask(BufferedImage image, int bpp, int fromRow, int toRow, int rowBytes) {
+            this.image = image;
+            this.bpp = bpp;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.rowBytes = rowBytes;
+        }
+
+        @Override
+        protected Block compute() {
+            RowFilter rowFilter = new RowFilter(image, bpp, filter);
+            int dictionaryRows = Math.min((DICTIONARY_BYTES + rowBytes - 1) / rowBytes, fromRow);
+            byte[] raw = new byte[(toRow - fromRow + dictionaryRows) * rowBytes];
+            rowFilter.filter(fromRow - dictionaryRows, toRow, raw);
+
+            int dictionaryBytes = dictionaryRows * rowBytes;
+            int rawLength = raw.length - dictionaryBytes;
+            Block block = new Block();
+            block.rawLength = rawLength;
+            Adler32 adler = new Adler32();
+            adler.update(raw, dictionaryBytes, rawLength);
+            block.adler = adler.getValue();
+
+            Deflater deflater = new Deflater(level, true); // 不带 zlib 头部的原始 Deflate 数据
+            try {
+                if (dictionaryBytes > 0) {
+                    int length = Math.min(dictionaryBytes, DICTIONARY_BYTES);
+                    deflater.setDictionary(raw, dictionaryBytes - length, length);
+                }
+                deflater.setInput(raw, dictionaryBytes, rawLength);
+                boolean last = toRow == image.getHeight();
+                if (last) deflater.finish();
+
+                byte[] out = new byte[rawLength / 2 + 1024];
+                int count = 0;
+                while (true) {
+                    if (count == out.length) out = Arrays.copyOf(out, out.length * 2);
+                    int n = deflater.deflate(out, count, out.length - count, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                    count += n;
+                    // 结束时数据全部输出；SYNC_FLUSH 时输出缓冲区没有写满说明已经全部输出
+                    if (last ? deflater.finished() : count < out.length) break;
+                }
+                block.compressed = out;
+                block.length = count;
+            } finally {
+                deflater.end();
+            }
+
+            return block;
+        }
+    }
+
+    /**
+     * 把图片的行转换为 RGB(A) 样本并过滤，每行以过滤方式的字节开头
+     */
+    private static class RowFilter {
+
+        private static final int BAND_ROWS = 16; // 每次从图片读取的行数
+
+        private final BufferedImage image;
+        private final int bpp;
+        private final int width;
+        private final int[] pixels;
+        private final PngRowFilter rowFilter;
+        private byte[] row;
+        private byte[] prev;
+
+        RowFilter(BufferedImage image, int bpp, Filter filter) {
+            this.image = image;
+            this.bpp = bpp;
+            this.width = image.getWidth();
+            this.pixels = new int[width * BAND_ROWS];
+            this.rowFilter = new PngRowFilter(filter, bpp, width * bpp);
+            this.row = new byte[width * bpp];
+            this.prev = new byte[width * bpp];
+        }
+
+        /**
+         * 过滤 [fromRow, toRow) 之间的行并写入输出流
+         */
+        void filter(int fromRow, int toRow, OutputStream out) throws IOException {
+            loadPrevious(fromRow);
+            for (int y = fromRow; y < toRow; y += BAND_ROWS) {
+                int rows = Math.min(BAND_ROWS, toRow - y);
+                ImageUtil.getPixels(image, y, rows, pixels);
+                for (int r = 0; r < rows; r++) {
+                    byte[] filtered = next(r);
+                    out.write(filtered, 0, filtered.length);
+                }
+            }
+        }
+
+        /**
+         * 过滤 [fromRow, toRow) 之间的行并依次写入数组
+         */
+        void filter(int fromRow, int toRow, byte[] out) {
+            loadPrevious(fromRow);
+            int off = 0;
+            for (int y = fromRow; y < toRow; y += BAND_ROWS) {
+                int rows = Math.min(BAND_ROWS, toRow - y);
+                ImageUtil.getPixels(image, y, rows, pixels);
+                for (int r = 0; r < rows; r++) {
+                    byte[] filtered = next(r);
+                    System.arraycopy(filtered, 0, out, off, filtered.length);
+                    off += filtered.length;
+                }
+            }
+        }
+
+        /**
+         * 过滤需要上一行的样本，第一行之前视为全 0
+         */
+        private void loadPrevious(int fromRow) {
+            if (fromRow == 0) {
+                Arrays.fill(prev, (byte) 0);
+                return;
+            }
+            ImageUtil.getPixels(image, fromRow - 1, 1, pixels);
+            toSamples(0, prev);
+        }
+
+        /**
+         * 转换波段中的第 r 行并过滤，返回的数组在下一次调用前有效
+         */
+        private byte[] next(int r) {
+            toSamples(r * width, row);
+            byte[] result = rowFilter.filter(row, prev);
+
+            byte[] swap = prev;
+            prev = row;
+            row = swap;
+
+            return result;
+        }
+
+        private void toSamples(int off, byte[] samples) {
+            if (bpp == 4) {
+                for (int x = 0, i = 0; x < width; x++) {
+                    int argb = pixels[off + x];
+                    samples[i++] = (byte) (argb >>> 16);
+                    samples[i++] = (byte) (argb >>> 8);
+                    samples[i++] = (byte) argb;
+                    samples[i++] = (byte) (argb >>> 24);
+                }
+            } else {
+                for (int x = 0, i = 0; x < width; x++) {
+                    int argb = pixels[off + x];
+                    samples[i++] = (byte) (argb >>> 16);
+                    samples[i++] = (byte) (argb >>> 8);
+                    samples[i++] = (byte) argb;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.qin.sistego.util;
+
+/**
+ * PNG 的行过滤：每行之前加上过滤方式的字节，过滤后的值是样本与左侧、上方等相邻样本预测值之差
+ */
+class PngRowFilter {
+
+    private final PngEncoder.Filter filter;
+    private final int bpp;
+    private final byte[][] candidates; // ADAPTIVE 时各种过滤方式的结果
+
+    /**
+     * @param filter    过滤方式
+     * @param bpp       每个像素的字节数（不足 1 时为 1），左侧的样本是 bpp 个字节之前的样本
+     * @param rowLength 每行的字节数，不包括过滤方式的字节
+     */
+    PngRowFilter(PngEncoder.Filter filter, int bpp, int rowLength) {
+        this.filter = filter;
+        this.bpp = bpp;
+        this.candidates = new byte[filter == PngEncoder.Filter.ADAPTIVE ? 5 : 1][rowLength + 1];
+    }
+
+    /**
+     * 过滤一行
+     *
+     * @param cur  当前行
+     * @param prev 上一行，第一行之前视为全 0
+     * @return 以过滤方式的字节开头的过滤结果，在下一次调用前有效
+     */
+    byte[] filter(byte[] cur, byte[] prev) {
+        if (filter != PngEncoder.Filter.ADAPTIVE) {
+            apply(filter.ordinal(), cur, prev, candidates[0], false);
+            return candidates[0];
+        }
+
+        byte[] result = candidates[0];
+        long best = Long.MAX_VALUE;
+        for (int type = 0; type < 5; type++) {
+            long sum = apply(type, cur, prev, candidates[type], true);
+            if (sum < best) {
+                best = sum;
+                result = candidates[type];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * 按指定的过滤方式过滤当前行
+     *
+     * @return 需要时返回过滤结果（按有符号数）的绝对值之和，用于 ADAPTIVE 选择过滤方式
+     */
+    private long apply(int type, byte[] cur, byte[] up, byte[] out, boolean sum) {
+        int n = cur.length;
+        out[0] = (byte) type;
+
+        switch (type) {
+            case 0:
+                System.arraycopy(cur, 0, out, 1, n);
+                break;
+            case 1:
+                System.arraycopy(cur, 0, out, 1, Math.min(bpp, n));
+                for (int i = bpp; i < n; i++) out[i + 1] = (byte) (cur[i] - cur[i - bpp]);
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) out[i + 1] = (byte) (cur[i] - up[i]);
+                break;
+            case 3:
+                for (int i = 0; i < bpp && i < n; i++) out[i + 1] = (byte) (cur[i] - ((up[i] & 0xff) >>> 1));
+                for (int i = bpp; i < n; i++)
+                    out[i + 1] = (byte) (cur[i] - (((cur[i - bpp] & 0xff) + (up[i] & 0xff)) >>> 1));
+                break;
+            default:
+                for (int i = 0; i < bpp && i < n; i++) out[i + 1] = (byte) (cur[i] - up[i]);
+                for (int i = bpp; i < n; i++)
+                    out[i + 1] = (byte) (cur[i] - paeth(cur[i - bpp] & 0xff, up[i] & 0xff, up[i - bpp] & 0xff));
+                break;
+        }
+
+        long total = 0;
+        if (sum) {
+            for (int i = 1; i <= n; i++) total += Math.abs(out[i]);
+        }
+
+        return total;
+    }
+
+    /**
+     * 还原过滤后的一行
+     *
+     * @param type 过滤方式的字节
+     * @param row  过滤后的行（不包括过滤方式的字节），原地还原
+     * @param prev 已还原的上一行，第一行之前为全 0
+     * @param bpp  每个像素的字节数（不足 1 时为 1）
+     * @return 过滤方式是否合法
+     */
+    static boolean unfilter(int type, byte[] row, byte[] prev, int bpp) {
+        int n = row.length;
+
+        switch (type) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < n; i++) row[i] += row[i - bpp];
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) row[i] += prev[i];
+                break;
+            case 3:
+                for (int i = 0; i < bpp && i < n; i++) row[i] += (prev[i] & 0xff) >>> 1;
+                for (int i = bpp; i < n; i++) row[i] += ((row[i - bpp] & 0xff) + (prev[i] & 0xff)) >>> 1;
+                break;
+            case 4:
+                for (int i = 0; i < bpp && i < n; i++) row[i] += prev[i];
+                for (int i = bpp; i < n; i++) row[i] += paeth(row[i - bpp] & 0xff, prev[i] & 0xff, prev[i - bpp] & 0xff);
+                break;
+            default:
+                return false;
+        }
+
+        return true;
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+}
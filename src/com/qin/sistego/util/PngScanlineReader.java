@@ -0,0 +1,239 @@
+package com.qin.sistego.util;
+
+import com.qin.sistego.exception.FileOperationException;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 逐行读取 PNG 图片的像素数据：按顺序解析文件中的块，IDAT 中的数据边读取边解压，每次只还原一行，
+ * 内存中只保留当前行和上一行，与图片的大小无关<br/>
+ * 第一个 IDAT 块之前的内容（签名、IHDR、调色板、色彩空间等）原样保存在 {@link #getHead()} 中，
+ * 之后的块可以由 {@link #copyRest} 原样复制，用于只修改像素、保留其他所有信息地重写图片
+ */
+public class PngScanlineReader implements Closeable {
+
+    public static final int COLOR_GRAY = 0;
+    public static final int COLOR_RGB = 2;
+    public static final int COLOR_PALETTE = 3;
+    public static final int COLOR_GRAY_ALPHA = 4;
+    public static final int COLOR_RGBA = 6;
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int IDAT = 0x49444154;
+    private static final int IHDR = 0x49484452;
+
+    private final DataInputStream in;
+    private final byte[] head;
+    private final int width;
+    private final int height;
+    private final int bitDepth;
+    private final int colorType;
+    private final boolean interlaced;
+
+    private final Inflater inflater = new Inflater();
+    private final IdatInputStream idat = new IdatInputStream();
+    private final DataInputStream rows;
+    private long idatRemaining; // 当前 IDAT 块中还没有读取的字节数
+    private byte[] pendingHeader; // IDAT 之后第一个块的长度和类型
+    private byte[] prev;
+    private int rowsRead;
+
+    /**
+     * 读取文件开头到第一个 IDAT 块的数据部分之前的内容，并解析 IHDR
+     *
+     * @param in 图片文件的输入流，关闭时一并关闭
+     * @throws IOException 读取时出错
+     */
+    public PngScanlineReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        DataOutputStream headOut = new DataOutputStream(head);
+
+        byte[] signature = new byte[SIGNATURE.length];
+        this.in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) throw new FileOperationException("不是 PNG 图片");
+        headOut.write(signature);
+
+        byte[] header = null;
+        while (true) {
+            int length = this.in.readInt();
+            int type = this.in.readInt();
+            if (length < 0) throw new FileOperationException("PNG 图片已损坏");
+            if (type == IDAT) {
+                idatRemaining = length;
+                break;
+            }
+
+            headOut.writeInt(length);
+            headOut.writeInt(type);
+            byte[] data = new byte[length];
+            this.in.readFully(data);
+            headOut.write(data);
+            headOut.writeInt(this.in.readInt()); // CRC
+            if (type == IHDR) header = data;
+        }
+        if (header == null || header.length < 13) throw new FileOperationException("PNG 图片已损坏");
+
+        DataInputStream ihdr = new DataInputStream(new ByteArrayInputStream(header));
+        this.width = ihdr.readInt();
+        this.height = ihdr.readInt();
+        this.bitDepth = ihdr.readUnsignedByte();
+        this.colorType = ihdr.readUnsignedByte();
+        ihdr.readUnsignedByte(); // 压缩方式
+        ihdr.readUnsignedByte(); // 过滤方式
+        this.interlaced = ihdr.readUnsignedByte() != 0;
+        if (width <= 0 || height <= 0 || getChannels() == 0) throw new FileOperationException("PNG 图片已损坏");
+
+        this.head = head.toByteArray();
+        this.rows = new DataInputStream(new InflaterInputStream(idat, inflater, 64 * 1024));
+        this.prev = new byte[getRowLength()];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return 每个样本的位数：1、2、4、8 或 16
+     */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * @return 颜色类型，<code>COLOR_GRAY</code> 等常量之一
+     */
+    public int getColorType() {
+        return colorType;
+    }
+
+    public boolean isInterlaced() {
+        return interlaced;
+    }
+
+    /**
+     * @return 每个像素的样本数，未知的颜色类型返回 0
+     */
+    public int getChannels() {
+        switch (colorType) {
+            case COLOR_GRAY:
+            case COLOR_PALETTE:
+                return 1;
+            case COLOR_GRAY_ALPHA:
+                return 2;
+            case COLOR_RGB:
+                return 3;
+            case COLOR_RGBA:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return 每行的字节数（不包括过滤方式的字节）
+     */
+    public int getRowLength() {
+        return (int) (((long) width * getChannels() * bitDepth + 7) / 8);
+    }
+
+    /**
+     * @return 过滤时左侧样本的距离，即每个像素的字节数，不足 1 时为 1
+     */
+    public int getBytesPerPixel() {
+        return Math.max(getChannels() * bitDepth / 8, 1);
+    }
+
+    /**
+     * @return 文件开头到第一个 IDAT 块之前的原始内容，不要修改
+     */
+    public byte[] getHead() {
+        return head;
+    }
+
+    /**
+     * 解压并还原下一行
+     *
+     * @param row 保存还原结果的数组，长度为 {@link #getRowLength()}
+     * @return 已经读完所有行时返回 false
+     * @throws IOException 读取时出错，或数据不完整
+     */
+    public boolean readRow(byte[] row) throws IOException {
+        if (interlaced) throw new FileOperationException("不支持隔行扫描的 PNG 图片");
+        if (rowsRead == height) return false;
+
+        int type = rows.readUnsignedByte();
+        rows.readFully(row, 0, prev.length);
+        if (!PngRowFilter.unfilter(type, row, prev, getBytesPerPixel())) throw new FileOperationException("PNG 图片已损坏");
+        System.arraycopy(row, 0, prev, 0, prev.length);
+        rowsRead++;
+
+        return true;
+    }
+
+    /**
+     * 跳过剩余的像素数据，把 IDAT 之后的所有块原样写入输出流
+     *
+     * @param out 输出流
+     * @throws IOException 读写时出错
+     */
+    public void copyRest(OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        while (idat.read(buffer, 0, buffer.length) != -1) ; // 压缩数据流结束之后的 IDAT 数据没有意义，直接跳过
+        if (pendingHeader == null) return;
+
+        out.write(pendingHeader);
+        FileUtil.copyStream(in, out);
+    }
+
+    /**
+     * 释放解压器并关闭输入流
+     */
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    /**
+     * 把连续的 IDAT 块中的数据拼接成一个流，遇到其他类型的块时结束
+     */
+    private class IdatInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            while (idatRemaining == 0) {
+                if (pendingHeader != null) return -1;
+
+                in.readInt(); // 上一个 IDAT 块的 CRC
+                int length = in.readInt();
+                int type = in.readInt();
+                if (type != IDAT) {
+                    pendingHeader = ByteUtil.concatBytes(ByteUtil.int2Bytes(length), ByteUtil.int2Bytes(type));
+                    return -1;
+                }
+                idatRemaining = length;
+            }
+
+            int n = in.read(b, off, (int) Math.min(len, idatRemaining));
+            if (n == -1) throw new EOFException("PNG 图片不完整");
+            idatRemaining -= n;
+
+            return n;
+        }
+    }
+}
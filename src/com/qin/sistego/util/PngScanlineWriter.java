@@ -0,0 +1,61 @@
+package com.qin.sistego.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 逐行写入 PNG 图片的像素数据：每行过滤后立即压缩、分成 IDAT 块写出，内存中只保留当前行和上一行<br/>
+ * 只写 IDAT 块，文件开头的签名、IHDR 等块以及结尾的 IEND 块由调用者写入
+ */
+public class PngScanlineWriter {
+
+    private final PngChunkOutputStream idat;
+    private final Deflater deflater;
+    private final DeflaterOutputStream zlib;
+    private final PngRowFilter rowFilter;
+    private final byte[] prev;
+
+    /**
+     * @param out           输出流，不会关闭它
+     * @param bytesPerPixel 每个像素的字节数，不足 1 时为 1
+     * @param rowLength     每行的字节数
+     * @param level         Deflate 压缩级别
+     * @param filter        行过滤方式
+     */
+    public PngScanlineWriter(OutputStream out, int bytesPerPixel, int rowLength, int level, PngEncoder.Filter filter) {
+        CompressUtil.checkLevel(level);
+        this.idat = new PngChunkOutputStream(out, "IDAT");
+        this.deflater = new Deflater(level);
+        this.zlib = new DeflaterOutputStream(idat, deflater, PngChunkOutputStream.CHUNK_BYTES);
+        this.rowFilter = new PngRowFilter(filter, bytesPerPixel, rowLength);
+        this.prev = new byte[rowLength];
+    }
+
+    /**
+     * 过滤并压缩一行
+     *
+     * @param row 未过滤的一行，长度为每行的字节数
+     * @throws IOException 写入时出错
+     */
+    public void writeRow(byte[] row) throws IOException {
+        byte[] filtered = rowFilter.filter(row, prev);
+        zlib.write(filtered, 0, filtered.length);
+        System.arraycopy(row, 0, prev, 0, prev.length);
+    }
+
+    /**
+     * 结束压缩，写出剩余的 IDAT 数据并释放压缩器
+     *
+     * @throws IOException 写入时出错
+     */
+    public void finish() throws IOException {
+        try {
+            zlib.finish();
+            idat.flush();
+        } finally {
+            deflater.end();
+        }
+    }
+}
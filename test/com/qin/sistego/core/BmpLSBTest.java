@@ -0,0 +1,132 @@
+package com.qin.sistego.core;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BmpLSBTest {
+
+    private static final String MESSAGE = "hidden message in the bitmap rows";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BufferedImage image;
+    private File file;
+    private byte[] content;
+
+    /**
+     * 宽度为奇数，24 位图片的每行需要补齐到 4 字节；信息跨越多行
+     */
+    @Before
+    public void setUp() throws Exception {
+        image = TestImages.gradient(61, 40, BufferedImage.TYPE_INT_RGB);
+
+        content = new byte[300];
+        new Random(3).nextBytes(content);
+        file = folder.newFile("payload.bin");
+        Files.write(file.toPath(), content);
+    }
+
+    @Test
+    public void oddWidth24BitRoundTrips() throws Exception {
+        assertRoundTrips(TestImages.write(image, folder.getRoot(), "cover.bmp"));
+    }
+
+    @Test
+    public void bottomUp32BitRoundTrips() throws Exception {
+        assertRoundTrips(writeBmp(image, 32, false, "cover32.bmp"));
+    }
+
+    @Test
+    public void topDown24BitRoundTrips() throws Exception {
+        assertRoundTrips(writeBmp(image, 24, true, "topdown24.bmp"));
+    }
+
+    @Test
+    public void topDown32BitRoundTrips() throws Exception {
+        assertRoundTrips(writeBmp(image, 32, true, "topdown32.bmp"));
+    }
+
+    /**
+     * 样本按图片的坐标从上到下、每个像素内按 R、G、B 排列，与 <code>LSB</code> 的原生样本布局相同，
+     * 所以载体转换为 PNG 后仍能用 <code>LSB</code> 和 <code>PngLSB</code> 提取
+     */
+    @Test
+    public void carrierConvertedToPngStillExtracts() throws Exception {
+        String[] covers = {TestImages.write(image, folder.getRoot(), "cover.bmp"), writeBmp(image, 32, false, "cover32.bmp"),
+                writeBmp(image, 24, true, "topdown24.bmp"), writeBmp(image, 32, true, "topdown32.bmp")};
+
+        for (String cover : covers) {
+            String name = new File(cover).getName();
+            String png = TestImages.write(ImageIO.read(new File(BmpLSB.hideString(cover, MESSAGE))), folder.getRoot(), name + ".png");
+
+            assertEquals(name, MESSAGE, LSB.extractString(png));
+            assertEquals(name, MESSAGE, PngLSB.extractString(png));
+
+            png = TestImages.write(ImageIO.read(new File(BmpLSB.hideFile(cover, file.getPath()))), folder.getRoot(), name + ".file.png");
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            assertEquals(name, "payload.bin", LSB.extract(png, sink));
+            assertArrayEquals(name, content, sink.toByteArray());
+        }
+    }
+
+    private void assertRoundTrips(String cover) throws Exception {
+        String output = BmpLSB.hideString(cover, MESSAGE);
+        assertEquals(MESSAGE, BmpLSB.extractString(output));
+        PayloadInfo info = BmpLSB.probe(output);
+        assertTrue(info.isPresent());
+        assertEquals(PayloadInfo.Type.STRING, info.getType());
+
+        output = BmpLSB.hideFile(cover, file.getPath());
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        assertEquals("payload.bin", BmpLSB.extract(output, sink));
+        assertArrayEquals(content, sink.toByteArray());
+        assertEquals(PayloadInfo.Type.FILE, BmpLSB.probe(output).getType());
+    }
+
+    /**
+     * 手工写入 ImageIO 不会生成的 BMP：32 位（第 4 个字节不使用），或高度为负数、各行从上到下存储
+     *
+     * @return 文件路径
+     */
+    private String writeBmp(BufferedImage image, int bitCount, boolean topDown, String name) throws Exception {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int bytesPerPixel = bitCount / 8;
+        int stride = (width * bytesPerPixel + 3) & ~3;
+        ByteBuffer bmp = ByteBuffer.allocate(54 + stride * height).order(ByteOrder.LITTLE_ENDIAN);
+
+        bmp.put((byte) 'B').put((byte) 'M').putInt(bmp.capacity()).putInt(0).putInt(54);
+        bmp.putInt(40).putInt(width).putInt(topDown ? -height : height).putShort((short) 1).putShort((short) bitCount)
+                .putInt(0).putInt(stride * height).putInt(2835).putInt(2835).putInt(0).putInt(0);
+        for (int row = 0; row < height; row++) {
+            int y = topDown ? row : height - 1 - row;
+            bmp.position(54 + row * stride);
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                bmp.put((byte) rgb).put((byte) (rgb >>> 8)).put((byte) (rgb >>> 16));
+                if (bytesPerPixel == 4) bmp.put((byte) 0);
+            }
+        }
+
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), bmp.array());
+        BufferedImage decoded = ImageIO.read(file);
+        assertArrayEquals(name, image.getRGB(0, 0, width, height, null, 0, width), decoded.getRGB(0, 0, width, height, null, 0, width));
+
+        return file.getPath();
+    }
+}
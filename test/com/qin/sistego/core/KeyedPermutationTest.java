@@ -0,0 +1,69 @@
+package com.qin.sistego.core;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+public class KeyedPermutationTest {
+
+    /**
+     * 位数为奇数、恰好是 2 的幂、比 2 的幂多 1 等各种大小的范围上，每个位置都映射到范围内，且没有两个位置映射到同一个位置
+     */
+    @Test
+    public void mapIsBijectionOverRange() {
+        long from = SampleWriter.HEADER_SAMPLES;
+        for (int count : new int[]{1, 2, 3, 5, 7, 8, 9, 127, 128, 129, 1000, 4095, 4097, 65537, 300001}) {
+            KeyedPermutation permutation = new KeyedPermutation("key", from, count);
+            BitSet seen = new BitSet(count);
+
+            for (long index = from; index < from + count; index++) {
+                long mapped = permutation.map(index);
+                assertTrue(count + ": " + mapped, mapped >= from && mapped < from + count);
+                assertFalse(count + ": " + mapped + " 重复", seen.get((int) (mapped - from)));
+                seen.set((int) (mapped - from));
+            }
+            assertEquals(count, seen.cardinality());
+        }
+    }
+
+    @Test
+    public void segmentMapMatchesSingleMap() {
+        KeyedPermutation permutation = new KeyedPermutation("key", 128, 10007);
+        int[] out = new int[1000];
+        permutation.map(5000, out, 0, out.length);
+
+        for (int i = 0; i < out.length; i++) assertEquals(permutation.map(5000 + i), out[i]);
+    }
+
+    @Test
+    public void sameKeyGivesSamePermutationAndOtherKeysDiffer() {
+        KeyedPermutation a = new KeyedPermutation("key", 0, 10000);
+        KeyedPermutation b = new KeyedPermutation("key", 0, 10000);
+        KeyedPermutation c = new KeyedPermutation("other", 0, 10000);
+        int same = 0;
+
+        for (long i = 0; i < 10000; i++) {
+            assertEquals(a.map(i), b.map(i));
+            if (a.map(i) == c.map(i)) same++;
+        }
+        assertTrue("不同的密钥得到几乎相同的置换", same < 100);
+    }
+
+    /**
+     * 图片的样本数通常不是 2 的幂，置换必须覆盖头部之后的全部样本
+     */
+    @Test
+    public void rasterPermutationCoversSamplesAfterHeader() {
+        BufferedImage image = new BufferedImage(13, 11, BufferedImage.TYPE_3BYTE_BGR);
+        long total = RasterSamples.count(image);
+        KeyedPermutation permutation = RasterSamples.permutation(image, "key");
+        BitSet seen = new BitSet((int) total);
+
+        for (long sample = SampleWriter.HEADER_SAMPLES; sample < total; sample++) seen.set((int) permutation.map(sample));
+        assertEquals(total - SampleWriter.HEADER_SAMPLES, seen.cardinality());
+        assertEquals(SampleWriter.HEADER_SAMPLES, seen.nextSetBit(0));
+    }
+}
@@ -0,0 +1,137 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LSBTest {
+
+    private static final String MESSAGE = "hidden message for the v2 header";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hideAndExtractStringWithArgbHeader() throws Exception {
+        String cover = TestImages.write(TestImages.gradient(64, 64, BufferedImage.TYPE_INT_ARGB), folder.getRoot(), "argb.png");
+        String output = LSB.hideString(cover, MESSAGE);
+
+        assertEquals(MESSAGE, LSB.extractString(output));
+        PayloadInfo info = LSB.probe(output);
+        assertTrue(info.isPresent());
+        assertEquals(LSBHeader.VERSION, info.getVersion());
+        assertEquals(PayloadInfo.Type.STRING, info.getType());
+        assertTrue(info.isChecked());
+    }
+
+    @Test
+    public void hideAndExtractFileWithSampleHeader() throws Exception {
+        String cover = TestImages.write(TestImages.gradient(64, 64, BufferedImage.TYPE_INT_RGB), folder.getRoot(), "rgb.png");
+        byte[] content = new byte[500];
+        new Random(1).nextBytes(content);
+        File file = folder.newFile("payload.bin");
+        Files.write(file.toPath(), content);
+
+        String output = LSB.hideFile(cover, file.getPath());
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        assertEquals("payload.bin", LSB.extract(output, sink));
+        assertArrayEquals(content, sink.toByteArray());
+        PayloadInfo info = LSB.probe(output);
+        assertTrue(info.isPresent());
+        assertEquals(PayloadInfo.Type.FILE, info.getType());
+        assertTrue(info.isChecked());
+    }
+
+    /**
+     * ARGB 布局的头部占列优先顺序的前 32 个像素，之后每个像素保存 4 位，第 52 个像素是信息的第 10 个字节
+     */
+    @Test
+    public void flippedPayloadBitInArgbLayoutFailsChecksum() throws Exception {
+        String cover = TestImages.write(TestImages.gradient(64, 64, BufferedImage.TYPE_INT_ARGB), folder.getRoot(), "argb.png");
+        final BufferedImage image = ImageIO.read(new File(LSB.hideString(cover, MESSAGE)));
+        image.setRGB(52 / 64, 52 % 64, image.getRGB(52 / 64, 52 % 64) ^ 1);
+
+        assertChecksumMismatch(image, TestImages.write(image, folder.getRoot(), "flipped.png"));
+    }
+
+    /**
+     * 原生样本布局的头部占前 128 个样本，之后每个样本保存 1 位，第 208 个样本（第 69 个像素的第 2 个波段）是信息的第 10 个字节
+     */
+    @Test
+    public void flippedPayloadBitInSampleLayoutFailsChecksum() throws Exception {
+        String cover = TestImages.write(TestImages.gradient(64, 64, BufferedImage.TYPE_INT_RGB), folder.getRoot(), "rgb.png");
+        final BufferedImage image = ImageIO.read(new File(LSB.hideString(cover, MESSAGE)));
+        WritableRaster raster = image.getRaster();
+        raster.setSample(69 % 64, 69 / 64, 1, raster.getSample(69 % 64, 69 / 64, 1) ^ 1);
+
+        assertChecksumMismatch(image, TestImages.write(image, folder.getRoot(), "flipped.png"));
+    }
+
+    @Test
+    public void probeFindsNothingInCleanImages() throws Exception {
+        for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            BufferedImage image = TestImages.gradient(64, 64, type);
+
+            assertFalse(LSB.probe(image).isPresent());
+            assertFalse(LSB.probe(TestImages.write(image, folder.getRoot(), "clean" + type + ".png")).isPresent());
+        }
+    }
+
+    /**
+     * 参数为 null 时写入没有头部的旧格式，探测不到，但仍能按旧格式提取
+     */
+    @Test
+    public void legacyCarrierIsNotProbedButStillExtracts() throws Exception {
+        String cover = TestImages.write(TestImages.gradient(64, 64, BufferedImage.TYPE_INT_ARGB), folder.getRoot(), "argb.png");
+        String output = LSB.hideString(cover, MESSAGE, null);
+
+        assertFalse(LSB.probe(output).isPresent());
+        assertEquals(MESSAGE, LSB.extractString(output));
+    }
+
+    @Test
+    public void keyedHideRoundTripsOnlyWithTheSameKey() throws Exception {
+        for (int type : new int[]{BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB}) {
+            for (boolean lowFootprint : new boolean[]{false, true}) {
+                String cover = TestImages.write(TestImages.gradient(61, 37, type), folder.getRoot(), "cover" + type + ".png");
+                final String output = LSB.hideString(cover, MESSAGE, new LSBOptions().setKey("secret").setLowFootprint(lowFootprint));
+
+                assertEquals(MESSAGE, LSB.extractString(output, new LSBOptions().setKey("secret")));
+                assertThrows(FileOperationException.class, () -> LSB.extractString(output, new LSBOptions().setKey("wrong")));
+                assertThrows(FileOperationException.class, () -> LSB.extractString(output));
+            }
+        }
+    }
+
+    @Test
+    public void streamingHidesRejectKey() throws Exception {
+        BufferedImage image = TestImages.gradient(32, 32, BufferedImage.TYPE_INT_RGB);
+        final String png = TestImages.write(image, folder.getRoot(), "cover.png");
+        final String bmp = TestImages.write(image, folder.getRoot(), "cover.bmp");
+        final LSBOptions options = new LSBOptions().setKey("secret");
+
+        assertThrows(IllegalArgumentException.class, () -> PngLSB.hideString(png, MESSAGE, options));
+        assertThrows(IllegalArgumentException.class, () -> BmpLSB.hideString(bmp, MESSAGE, options));
+        assertEquals(2, folder.getRoot().list().length); // 只有两张载体图片，没有留下输出文件
+    }
+
+    private static void assertChecksumMismatch(final BufferedImage image, final String path) {
+        FileOperationException e = assertThrows(FileOperationException.class, () -> LSB.extractString(image, null));
+        assertTrue(e.getMessage(), e.getMessage().contains("校验和不一致"));
+
+        e = assertThrows(FileOperationException.class, () -> LSB.extractString(path));
+        assertTrue(e.getMessage(), e.getMessage().contains("校验和不一致"));
+    }
+}
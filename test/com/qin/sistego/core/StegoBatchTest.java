@@ -0,0 +1,70 @@
+package com.qin.sistego.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StegoBatchTest {
+
+    private static final int TASKS = 400;
+
+    private File dir;
+    private String cover;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("stego", "");
+        assertTrue(dir.delete() && dir.mkdir());
+
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 64; y++) {
+            for (int x = 0; x < 64; x++) image.setRGB(x, y, x * 4 << 16 | y * 4 << 8 | (x ^ y) * 4);
+        }
+        cover = new File(dir, "cover.png").getPath();
+        ImageIO.write(image, "png", new File(cover));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * 同一秒内对同一图片并发隐写，每个任务都应得到自己的输出文件，且文件中是它自己的信息。
+     * 图片很小，任务很多，输出文件被删除后重新创建时其他任务很容易取得同一路径
+     */
+    @Test
+    public void concurrentTasksOnSameCoverGetDistinctOutputs() {
+        StegoBatch batch = new StegoBatch().setCpuThreads(16).setIoThreads(16);
+        for (int i = 0; i < TASKS; i++) {
+            batch.add(i % 4 != 0 ? StegoBatch.Task.string(cover, "message " + i, StegoBatch.Mode.LSB)
+                    : StegoBatch.Task.string(cover, "message " + i, StegoBatch.Mode.TAIL));
+        }
+        StegoBatch.Report report = batch.run();
+
+        assertTrue(report.getFailures().toString(), report.getFailures().isEmpty());
+        Set<String> outputs = new HashSet<String>();
+        for (int i = 0; i < TASKS; i++) {
+            String output = report.getResults().get(i).getOutput();
+            assertTrue("重复的输出文件 " + output, outputs.add(output));
+
+            String message = i % 4 != 0 ? LSB.extractString(output) : Tail.extractString(output);
+            assertEquals("message " + i, message);
+        }
+        assertEquals(TASKS + 1, dir.listFiles().length);
+    }
+}
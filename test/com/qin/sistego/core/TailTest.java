@@ -0,0 +1,127 @@
+package com.qin.sistego.core;
+
+import com.qin.sistego.exception.FileOperationException;
+import com.qin.sistego.util.ByteUtil;
+import com.qin.sistego.util.FileUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.function.ThrowingRunnable;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TailTest {
+
+    private static final String MESSAGE = "hidden message after the image";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String cover;
+    private byte[] coverBytes;
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws IOException {
+        cover = TestImages.write(TestImages.gradient(32, 32, BufferedImage.TYPE_INT_RGB), folder.getRoot(), "cover.png");
+        coverBytes = Files.readAllBytes(new File(cover).toPath());
+
+        content = new byte[5000];
+        new Random(2).nextBytes(content);
+        file = folder.newFile("payload.bin");
+        Files.write(file.toPath(), content);
+    }
+
+    @Test
+    public void hideAndExtractWithFooter() throws Exception {
+        String output = Tail.hideFile(cover, file.getPath());
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        assertEquals("payload.bin", Tail.extract(output, sink));
+        assertArrayEquals(content, sink.toByteArray());
+        PayloadInfo info = Tail.probe(output);
+        assertTrue(info.isPresent());
+        assertEquals(TailFooter.VERSION, info.getVersion());
+        assertEquals(PayloadInfo.Type.FILE, info.getType());
+        assertTrue(info.isChecked());
+
+        assertEquals(MESSAGE, Tail.extractString(Tail.hideString(cover, MESSAGE)));
+        assertEquals(MESSAGE, Tail.extractString(ByteBuffer.wrap(Tail.hideString(ByteBuffer.wrap(coverBytes), MESSAGE))));
+    }
+
+    @Test
+    public void hideAndExtractCompressedInMemory() {
+        byte[] text = new byte[20000]; // 可以压缩的内容
+        for (int i = 0; i < text.length; i++) text[i] = (byte) ('a' + i % 7);
+        byte[] carrier = Tail.hideFile(ByteBuffer.wrap(coverBytes), "text.txt", text, 6);
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+        assertTrue(carrier.length < coverBytes.length + text.length);
+        assertEquals("text.txt", Tail.extract(ByteBuffer.wrap(carrier), sink));
+        assertArrayEquals(text, sink.toByteArray());
+    }
+
+    /**
+     * 信息从图片的末尾开始，翻转其中一个字节后文件路径和内存中的提取都应报告校验和不一致
+     */
+    @Test
+    public void flippedPayloadByteFailsChecksum() throws Exception {
+        byte[] fileCarrier = Files.readAllBytes(new File(Tail.hideFile(cover, file.getPath())).toPath());
+        fileCarrier[coverBytes.length + 100] ^= 1;
+        byte[] stringCarrier = Tail.hideString(ByteBuffer.wrap(coverBytes), MESSAGE);
+        stringCarrier[coverBytes.length + 3] ^= 1;
+
+        final File corruptFile = folder.newFile("file.png");
+        Files.write(corruptFile.toPath(), fileCarrier);
+        final File corruptString = folder.newFile("string.png");
+        Files.write(corruptString.toPath(), stringCarrier);
+        final ByteBuffer fileBuffer = ByteBuffer.wrap(fileCarrier);
+        final ByteBuffer stringBuffer = ByteBuffer.wrap(stringCarrier);
+
+        assertChecksumMismatch(() -> Tail.extract(corruptFile.getPath(), new ByteArrayOutputStream()));
+        assertChecksumMismatch(() -> Tail.extract(fileBuffer, new ByteArrayOutputStream()));
+        assertChecksumMismatch(() -> Tail.extractString(corruptString.getPath()));
+        assertChecksumMismatch(() -> Tail.extractString(stringBuffer));
+    }
+
+    @Test
+    public void probeFindsNothingInCleanImage() {
+        assertFalse(Tail.probe(cover).isPresent());
+        assertFalse(Tail.probe(ByteBuffer.wrap(coverBytes)).isPresent());
+    }
+
+    /**
+     * 旧格式直接在图片之后追加信息，没有尾部结构：探测不到，但仍能通过搜索图片的结束标记提取
+     */
+    @Test
+    public void legacyCarrierIsNotProbedButStillExtracts() throws Exception {
+        File fileCarrier = folder.newFile("legacy-file.png");
+        Files.write(fileCarrier.toPath(), ByteUtil.concatBytes(coverBytes, FileUtil.file2InfoBytes(file.getPath())));
+        File stringCarrier = folder.newFile("legacy-string.png");
+        Files.write(stringCarrier.toPath(), ByteUtil.concatBytes(coverBytes, MESSAGE.getBytes()));
+
+        assertFalse(Tail.probe(fileCarrier.getPath()).isPresent());
+        assertFalse(Tail.probe(stringCarrier.getPath()).isPresent());
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        assertEquals("payload.bin", Tail.extract(fileCarrier.getPath(), sink));
+        assertArrayEquals(content, sink.toByteArray());
+        assertEquals(MESSAGE, Tail.extractString(stringCarrier.getPath()));
+        assertEquals(MESSAGE, Tail.extractString(ByteBuffer.wrap(ByteUtil.concatBytes(coverBytes, MESSAGE.getBytes()))));
+    }
+
+    private static void assertChecksumMismatch(ThrowingRunnable extraction) {
+        FileOperationException e = assertThrows(FileOperationException.class, extraction);
+        assertTrue(e.getMessage(), e.getMessage().contains("校验和不一致"));
+    }
+}
@@ -0,0 +1,39 @@
+package com.qin.sistego.core;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 测试使用的载体图片：颜色随坐标变化，相邻像素的最低位各不相同
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    static BufferedImage gradient(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, 0xff000000 | (x * 7 & 0xff) << 16 | (y * 5 & 0xff) << 8 | (x ^ y) * 3 & 0xff);
+            }
+        }
+
+        return image;
+    }
+
+    /**
+     * 将图片写入目录下的文件，格式由后缀名决定
+     *
+     * @return 文件路径
+     */
+    static String write(BufferedImage image, File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        if (!ImageIO.write(image, name.substring(name.lastIndexOf('.') + 1), file))
+            throw new IOException("不支持的图片格式 " + name);
+
+        return file.getPath();
+    }
+}
@@ -0,0 +1,139 @@
+package com.qin.sistego.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BytePatternTest {
+
+    /**
+     * 字母表很小时模式会频繁地部分匹配，跳跃表的各种情况都会出现；模式从源数组中截取或随机生成（通常找不到）
+     */
+    @Test
+    public void searchesMatchNaiveScan() {
+        Random random = new Random(4);
+        for (int round = 0; round < 2000; round++) {
+            int alphabet = 1 + random.nextInt(4);
+            byte[] src = randomBytes(random, random.nextInt(200), alphabet);
+            byte[] pattern;
+            if (src.length > 0 && random.nextBoolean()) {
+                int start = random.nextInt(src.length);
+                pattern = new byte[1 + random.nextInt(Math.min(src.length - start, 12))];
+                System.arraycopy(src, start, pattern, 0, pattern.length);
+            } else {
+                pattern = randomBytes(random, 1 + random.nextInt(12), alphabet + 1);
+            }
+
+            assertSearchesMatch(src, pattern);
+        }
+    }
+
+    @Test
+    public void lengthOnePatternMatchesNaiveScan() {
+        byte[] src = {3, -1, 0, 3, 7, -128, 3, 127};
+        for (int b = -128; b < 128; b++) assertSearchesMatch(src, new byte[]{(byte) b});
+    }
+
+    @Test
+    public void notFoundReturnsMinusOne() {
+        BytePattern pattern = BytePattern.compile(new byte[]{1, 2, 3});
+
+        assertEquals(-1, pattern.indexOf(new byte[0]));
+        assertEquals(-1, pattern.lastIndexOf(new byte[0]));
+        assertEquals(-1, pattern.indexOf(new byte[]{1, 2}));
+        assertEquals(-1, pattern.lastIndexOf(new byte[]{2, 3}));
+        assertEquals(-1, pattern.indexOf(new byte[]{1, 2, 1, 2, 3, 1}, 3));
+        assertEquals(-1, pattern.lastIndexOf(new byte[]{1, 2, 1, 2, 3, 1}, 1));
+        assertEquals(-1, pattern.indexOf(ByteBuffer.wrap(new byte[]{3, 2, 1, 3, 2, 1})));
+        assertEquals(-1, pattern.lastIndexOf(ByteBuffer.wrap(new byte[]{3, 2, 1, 3, 2, 1})));
+    }
+
+    /**
+     * 空模式不能编译；<code>ByteUtil</code> 的正向搜索保留原来的行为，反向搜索拒绝空的目标
+     */
+    @Test
+    public void emptyPattern() {
+        assertThrows(IllegalArgumentException.class, () -> BytePattern.compile(new byte[0]));
+
+        assertEquals(0, ByteUtil.searchSubList(new byte[]{1, 2}, new byte[0]));
+        assertEquals(-1, ByteUtil.searchSubList(new byte[0], new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> ByteUtil.lastSearchSubList(new byte[]{1, 2}, new byte[0]));
+    }
+
+    /**
+     * 缓冲区的搜索范围是 [0, limit)，返回绝对位置，且不改变 position
+     */
+    @Test
+    public void bufferSearchUsesLimitAndKeepsPosition() {
+        byte[] bytes = {1, 2, 9, 1, 2, 9, 1, 2};
+        BytePattern pattern = BytePattern.compile(new byte[]{1, 2});
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(4).limit(7);
+
+        assertEquals(0, pattern.indexOf(buffer));
+        assertEquals(3, pattern.lastIndexOf(buffer));
+        assertEquals(4, buffer.position());
+        assertEquals(7, buffer.limit());
+    }
+
+    private static void assertSearchesMatch(byte[] src, byte[] target) {
+        BytePattern pattern = BytePattern.compile(target);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(src.length);
+        buffer.put(src).clear();
+        String message = Arrays.toString(target) + " in " + Arrays.toString(src);
+
+        assertEquals(message, naiveIndexOf(src, target, 0), pattern.indexOf(src));
+        assertEquals(message, naiveIndexOf(src, target, 0), pattern.indexOf(buffer));
+        assertEquals(message, naiveIndexOf(src, target, 0), ByteUtil.searchSubList(src, target));
+        assertEquals(message, naiveLastIndexOf(src, target, src.length), pattern.lastIndexOf(src));
+        assertEquals(message, naiveLastIndexOf(src, target, src.length), pattern.lastIndexOf(buffer));
+        assertEquals(message, naiveLastIndexOf(src, target, src.length), ByteUtil.lastSearchSubList(src, target));
+
+        for (int from = -1; from <= src.length + 1; from++) {
+            assertEquals(message + " from " + from, naiveIndexOf(src, target, from), pattern.indexOf(src, from));
+            assertEquals(message + " from " + from, naiveIndexOf(src, target, from), pattern.indexOf(buffer, from));
+            assertEquals(message + " from " + from, naiveLastIndexOf(src, target, from), pattern.lastIndexOf(src, from));
+            assertEquals(message + " from " + from, naiveLastIndexOf(src, target, from), pattern.lastIndexOf(buffer, from));
+        }
+        assertEquals(0, buffer.position());
+    }
+
+    private static int naiveIndexOf(byte[] src, byte[] target, int from) {
+        for (int i = Math.max(from, 0); i + target.length <= src.length; i++) {
+            if (matchesAt(src, target, i)) return i;
+        }
+
+        return -1;
+    }
+
+    private static int naiveLastIndexOf(byte[] src, byte[] target, int from) {
+        for (int i = Math.min(from, src.length - target.length); i >= 0; i--) {
+            if (matchesAt(src, target, i)) return i;
+        }
+
+        return -1;
+    }
+
+    private static boolean matchesAt(byte[] src, byte[] target, int i) {
+        for (int j = 0; j < target.length; j++) {
+            if (src[i + j] != target[j]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 字母表取 0 和 byte 的两端，使有符号的 byte 在跳跃表中也被正确索引
+     */
+    private static byte[] randomBytes(Random random, int length, int alphabet) {
+        byte[] letters = {0, -1, -128, 127, 1};
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = letters[random.nextInt(alphabet)];
+
+        return bytes;
+    }
+}
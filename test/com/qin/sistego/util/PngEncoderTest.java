@@ -0,0 +1,106 @@
+package com.qin.sistego.util;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PngEncoderTest {
+
+    private static final int[] TYPES = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_3BYTE_BGR};
+
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUpPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * 原始数据远大于一块（128K），并行压缩得到多块，拼接后的 zlib 数据流和 Adler-32 都必须被 ImageIO 接受，
+     * 且每种行过滤方式解码出的像素与原图相同
+     */
+    @Test
+    public void parallelEncodingDecodesToSamePixels() throws IOException {
+        for (int type : TYPES) {
+            BufferedImage image = image(389, 457, type);
+            for (PngEncoder.Filter filter : PngEncoder.Filter.values()) {
+                assertSamePixels(type + " " + filter, image, encode(new PngEncoder().setFilter(filter), image, pool));
+            }
+        }
+    }
+
+    /**
+     * 级别 0 只存储不压缩，每块的数据最长，块的边界和 Adler-32 的拼接同样要正确
+     */
+    @Test
+    public void parallelStoredBlocksDecodeToSamePixels() throws IOException {
+        for (int type : TYPES) {
+            BufferedImage image = image(389, 457, type);
+            PngEncoder encoder = new PngEncoder().setLevel(0).setFilter(PngEncoder.Filter.NONE);
+
+            assertSamePixels(String.valueOf(type), image, encode(encoder, image, pool));
+        }
+    }
+
+    @Test
+    public void parallelEncodingMatchesSequentialPixels() throws IOException {
+        BufferedImage image = image(389, 457, BufferedImage.TYPE_INT_ARGB);
+        PngEncoder encoder = new PngEncoder();
+
+        assertSamePixels("sequential", image, encode(encoder, image, null));
+        assertSamePixels("parallel", image, encode(encoder, image, pool));
+    }
+
+    /**
+     * 一半是渐变、一半是随机噪声，使各块的压缩结果长短不一；不透明的类型 alpha 固定为 0xff
+     */
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        boolean alpha = image.getColorModel().hasAlpha();
+        Random random = new Random(type);
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int argb = y % 64 < 32 ? (x * y & 0xff) << 24 | (x * 7 & 0xff) << 16 | (y * 5 & 0xff) << 8 | (x ^ y) & 0xff
+                        : random.nextInt();
+                image.setRGB(x, y, alpha ? argb : argb | 0xff000000);
+            }
+        }
+
+        return image;
+    }
+
+    private static byte[] encode(PngEncoder encoder, BufferedImage image, ForkJoinPool pool) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(image, out, pool);
+
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(String message, BufferedImage expected, byte[] png) throws IOException {
+        BufferedImage actual = ImageIO.read(new ByteArrayInputStream(png));
+
+        assertNotNull(message, actual);
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        assertArrayEquals(message,
+                expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth()),
+                actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth()));
+    }
+}